@@ -0,0 +1,103 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of <code>GET /jobs</code> and <code>GET /binaries</code> responses with the client's
+ * Gson, and with Gson's reflective adapters for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonBenchmark {
+  private static final Type JOBS = new TypeToken<List<JobInfo>>() { }.getType();
+  private static final Type BINARIES = new TypeToken<HashMap<String, Binary>>() { }.getType();
+
+  @Param({"10", "1000", "100000"})
+  private int size;
+
+  private Gson gson;
+  private Gson reflective;
+  private String jobs;
+  private String binaries;
+
+  @Setup
+  public void setup() {
+    gson = JobServerClientBuilder.defaultGson();
+    reflective = new GsonBuilder().setLenient()
+        .registerTypeAdapterFactory(new IsoDateAdapterFactory()).create();
+    List<JobInfo> list = new ArrayList<>(size);
+    HashMap<String, Binary> map = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      JobInfo info = new JobInfo();
+      info.setJobId("384cb740-6fc1-44d3-94c3-" + String.format("%012d", i));
+      info.setContext("context-" + i % 16);
+      info.setClassPath("demo.spark.jobserver.Job");
+      info.setDuration(i + ".5 secs");
+      info.setStartTime(new Date(1525000000000L + i * 1000L));
+      if (i % 10 == 0) {
+        info.setStatus(JobStatus.ERROR);
+        JobInfo.Result result = new JobInfo.Result();
+        result.setMessage("Job failed");
+        result.setErrorClass("java.lang.RuntimeException");
+        String[] stack = new String[40];
+        for (int j = 0; j < stack.length; j++) {
+          stack[j] = "org.apache.spark.scheduler.DAGScheduler.runJob(DAGScheduler.scala:" + j
+              + ")";
+        }
+        result.setStack(stack);
+        info.setResult(result);
+      } else {
+        info.setStatus(JobStatus.FINISHED);
+      }
+      list.add(info);
+      if (i < 1000) {
+        Binary binary = new Binary();
+        binary.setBinaryType("Jar");
+        binary.setUploadTime(new Date(1525000000000L + i * 1000L));
+        map.put("app-" + i, binary);
+      }
+    }
+    jobs = gson.toJson(list);
+    binaries = gson.toJson(map);
+  }
+
+  @Benchmark
+  public List<JobInfo> decodeJobs() {
+    return gson.fromJson(jobs, JOBS);
+  }
+
+  @Benchmark
+  public List<JobInfo> decodeJobsReflective() {
+    return reflective.fromJson(jobs, JOBS);
+  }
+
+  @Benchmark
+  public HashMap<String, Binary> decodeBinaries() {
+    return gson.fromJson(binaries, BINARIES);
+  }
+}
@@ -0,0 +1,59 @@
+package spark.jobserver.client;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Mapping#toMap()} of the configurations built for each submission.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+  private SparkConf sparkConf;
+  private SparkConst sparkConst;
+
+  @Setup
+  public void setup() throws IllegalAccessException {
+    sparkConf = new SparkConf().appName("app").context("context").classPath("demo.Job")
+        .contextFactory("spark.jobserver.context.StreamingContextFactory")
+        .jars("hdfs:///apps/spark/*").executorPath("/opt/lib");
+    sparkConst = new SparkConst();
+    // fill the fields without a default value
+    for (Field field : SparkConst.class.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      field.setAccessible(true);
+      if (field.get(sparkConst) == null && field.getType() == String.class) {
+        field.set(sparkConst, field.getName());
+      }
+    }
+  }
+
+  @Benchmark
+  public Map<String, Object> sparkConf() {
+    return sparkConf.toMap();
+  }
+
+  @Benchmark
+  public Map<String, Object> sparkConst() {
+    return sparkConst.toMap();
+  }
+}
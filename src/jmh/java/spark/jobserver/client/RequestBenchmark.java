@@ -0,0 +1,45 @@
+package spark.jobserver.client;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the retrofit request of a submission, without sending it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+  private JobServerService service;
+  private SparkConf conf;
+
+  @Setup
+  public void setup() {
+    service = JobServerService.newInstance("http://localhost:8090");
+    conf = new SparkConf().appName("app").context("context").classPath("demo.Job");
+  }
+
+  @Benchmark
+  public Request startJob() {
+    return service.startJob(conf.toMap()).request();
+  }
+
+  @Benchmark
+  public Request getJobInfo() {
+    return service.getJobInfo("384cb740-6fc1-44d3-94c3-4b2e2067846b").request();
+  }
+}
@@ -0,0 +1,287 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import lombok.Data;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Asynchronous facade of {@link JobServerService}, every call returns a
+ * {@link CompletableFuture} instead of blocking a thread.
+ *
+ * <p>A future completes with the response body, or exceptionally with an
+ * {@link HttpException} for a non-2xx response or the {@link IOException} of a failed call.
+ * Cancelling a future cancels the underlying OkHttp call.
+ */
+public class AsyncJobServerService {
+  private final JobServerService service;
+  private final Executor callbackExecutor;
+
+  /**
+   * Complete futures on OkHttp's dispatcher threads, dependent stages must not block.
+   */
+  public AsyncJobServerService(JobServerService service) {
+    this(service, Runnable::run);
+  }
+
+  /**
+   * Complete futures on the given executor.
+   */
+  public AsyncJobServerService(JobServerService service, Executor callbackExecutor) {
+    this.service = service;
+    this.callbackExecutor = callbackExecutor;
+  }
+
+  public JobServerService getService() {
+    return service;
+  }
+
+  public CompletableFuture<HashMap<String, Binary>> getBinaries() {
+    return toFuture(service.getBinaries());
+  }
+
+  public CompletableFuture<String> uploadJar(String appName, RequestBody file) {
+    return toFuture(service.uploadJar(appName, file));
+  }
+
+  /**
+   * Upload a jar file.
+   * @param appName App name.
+   * @param path Jar file path.
+   * @return Result.
+   */
+  public CompletableFuture<String> uploadJar(String appName, String path) {
+    try {
+      return uploadJar(appName, UploadBody.of(Paths.get(path), UploadBody.JAR));
+    } catch (IOException e) {
+      CompletableFuture<String> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  public CompletableFuture<String> deleteBinary(String appName) {
+    return toFuture(service.deleteBinary(appName));
+  }
+
+  public CompletableFuture<List<String>> getContexts() {
+    return toFuture(service.getContexts());
+  }
+
+  public CompletableFuture<String> getContext(String name) {
+    return toFuture(service.getContext(name));
+  }
+
+  public CompletableFuture<Result> createContext(String name, Map<String, Object> params) {
+    return toFuture(service.createContext(name, params));
+  }
+
+  public CompletableFuture<Result> deleteContext(String name) {
+    return toFuture(service.deleteContext(name));
+  }
+
+  public CompletableFuture<String> resetAllContexts() {
+    return toFuture(service.resetAllContexts());
+  }
+
+  public CompletableFuture<List<JobInfo>> getJobs() {
+    return toFuture(service.getJobs());
+  }
+
+  public CompletableFuture<List<JobInfo>> getJobs(JobStatus status, Integer limit) {
+    return toFuture(service.getJobs(status, limit));
+  }
+
+  public CompletableFuture<JobInfo> getJobInfo(String jobId) {
+    return toFuture(service.getJobInfo(jobId));
+  }
+
+  /**
+   * Job config as a json string.
+   */
+  public CompletableFuture<String> getJobConfig(String jobId) {
+    return toFuture(service.getJobConfig(jobId), body -> {
+      try (ResponseBody b = body) {
+        return b.string();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  public CompletableFuture<JobInfo> startJob(Map<String, Object> params) {
+    return toFuture(service.startJob(params));
+  }
+
+  /**
+   * Start many jobs with at most <code>parallelism</code> submissions in flight, sharing the
+   * client's connection pool. Equal configurations are converted to parameters once.
+   *
+   * @param confs Job configurations.
+   * @param parallelism Max number of concurrent submissions.
+   * @return Future of one submission per configuration, in the same order. A failed
+   *     submission is reported in its {@link Submission} without stopping the others.
+   *     Cancelling the future cancels the submissions in flight and skips the rest.
+   */
+  public CompletableFuture<List<Submission>> submitAll(List<SparkConf> confs, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    Map<SparkConf, Map<String, Object>> templates = new HashMap<>();
+    List<Map<String, Object>> params = new ArrayList<>(confs.size());
+    for (SparkConf conf : confs) {
+      params.add(templates.computeIfAbsent(conf, c -> Collections.unmodifiableMap(c.toMap())));
+    }
+    return new Batch(confs, params).start(parallelism);
+  }
+
+  /**
+   * Outcome of one job submission of {@link #submitAll(List, int)}.
+   */
+  @Data
+  public static class Submission {
+    private final SparkConf conf;
+    /**
+     * Started job, null if the submission failed.
+     */
+    private final JobInfo info;
+    /**
+     * Failure of the submission, e.g. an {@link HttpException}, null if it succeeded.
+     */
+    private final Throwable error;
+
+    public boolean isSuccessful() {
+      return error == null;
+    }
+  }
+
+  private final class Batch {
+    private final List<SparkConf> confs;
+    private final List<Map<String, Object>> params;
+    private final Submission[] results;
+    private final Set<CompletableFuture<JobInfo>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final CompletableFuture<List<Submission>> future = new CompletableFuture<>();
+
+    Batch(List<SparkConf> confs, List<Map<String, Object>> params) {
+      this.confs = confs;
+      this.params = params;
+      this.results = new Submission[confs.size()];
+      this.remaining = new AtomicInteger(confs.size());
+    }
+
+    CompletableFuture<List<Submission>> start(int parallelism) {
+      if (confs.isEmpty()) {
+        future.complete(Collections.emptyList());
+        return future;
+      }
+      future.whenComplete((list, error) -> {
+        if (future.isCancelled()) {
+          inFlight.forEach(f -> f.cancel(false));
+        }
+      });
+      for (int i = 0; i < Math.min(parallelism, confs.size()); i++) {
+        submitNext();
+      }
+      return future;
+    }
+
+    private void submitNext() {
+      int i = next.getAndIncrement();
+      if (i >= confs.size() || future.isDone()) {
+        return;
+      }
+      CompletableFuture<JobInfo> submission = startJob(params.get(i));
+      inFlight.add(submission);
+      submission.whenComplete((info, error) -> {
+        inFlight.remove(submission);
+        results[i] = new Submission(confs.get(i), info, error);
+        if (remaining.decrementAndGet() == 0) {
+          future.complete(Arrays.asList(results));
+        } else {
+          submitNext();
+        }
+      });
+    }
+  }
+
+  public CompletableFuture<String> killJob(String jobId) {
+    return toFuture(service.killJob(jobId));
+  }
+
+  public CompletableFuture<List<String>> getData() {
+    return toFuture(service.getData());
+  }
+
+  public CompletableFuture<DataResult> uploadData(String prefix, RequestBody file) {
+    return toFuture(service.uploadData(prefix, file));
+  }
+
+  public CompletableFuture<String> deleteData(String filename) {
+    return toFuture(service.deleteData(filename));
+  }
+
+  public CompletableFuture<String> resetData() {
+    return toFuture(service.resetData());
+  }
+
+  /**
+   * Enqueue a call and adapt it to a future, completed on the callback executor.
+   */
+  public <T> CompletableFuture<T> toFuture(Call<T> call) {
+    return toFuture(call, Function.identity());
+  }
+
+  private <T, R> CompletableFuture<R> toFuture(Call<T> call, Function<T, R> mapper) {
+    CompletableFuture<R> future = new CompletableFuture<R>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        call.cancel();
+        return super.cancel(mayInterruptIfRunning);
+      }
+    };
+    call.enqueue(new Callback<T>() {
+      @Override
+      public void onResponse(Call<T> call, Response<T> response) {
+        callbackExecutor.execute(() -> {
+          if (!response.isSuccessful()) {
+            future.completeExceptionally(new HttpException(response));
+            return;
+          }
+          try {
+            future.complete(mapper.apply(response.body()));
+          } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Call<T> call, Throwable throwable) {
+        callbackExecutor.execute(() -> future.completeExceptionally(throwable));
+      }
+    });
+    return future;
+  }
+}
@@ -0,0 +1,295 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Per-endpoint latency, throughput and error metrics, collected by an OkHttp
+ * {@link EventListener}. Plug it in with
+ * {@link JobServerClientBuilder#eventListenerFactory(EventListener.Factory)}.
+ *
+ * <p>Latency is split by {@link Phase}. Gson decodes a response while reading it, so decoding
+ * is part of {@link Phase#BODY}. Counters are lock-free, cheap enough to leave on.
+ */
+public class ClientMetrics implements EventListener.Factory {
+  public enum Phase {
+    /** From call start to end or failure. */
+    TOTAL,
+    DNS,
+    /** TCP connect, including TLS. */
+    CONNECT,
+    TLS,
+    /** Writing request headers and body. */
+    REQUEST,
+    /** From the request written to the response headers read, mostly server time. */
+    TTFB,
+    /** Reading and decoding the response body. */
+    BODY,
+  }
+
+  /**
+   * Metrics of one endpoint, e.g. <code>startJob</code>.
+   */
+  public static class EndpointMetrics {
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+    EndpointMetrics() {
+      for (int i = 0; i < histograms.length; i++) {
+        histograms[i] = new LatencyHistogram();
+      }
+    }
+
+    public LatencyHistogram histogram(Phase phase) {
+      return histograms[phase.ordinal()];
+    }
+
+    public long getBytesIn() {
+      return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+      return bytesOut.sum();
+    }
+
+    public long getInFlight() {
+      return inFlight.sum();
+    }
+
+    /**
+     * Error counts by HTTP status, 0 for I/O failures.
+     */
+    public Map<Integer, Long> getErrors() {
+      Map<Integer, Long> result = new TreeMap<>();
+      errors.forEach((code, n) -> result.put(code, n.sum()));
+      return result;
+    }
+
+    void record(Phase phase, long nanos) {
+      histograms[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void error(int code) {
+      errors.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Phase phase : Phase.values()) {
+        LatencyHistogram histogram = histogram(phase);
+        if (histogram.getCount() > 0) {
+          sb.append("  ").append(phase).append(": ").append(histogram).append('\n');
+        }
+      }
+      sb.append("  in=").append(getBytesIn()).append("B out=").append(getBytesOut())
+          .append("B inFlight=").append(getInFlight()).append(" errors=").append(getErrors());
+      return sb.toString();
+    }
+  }
+
+  private static final Set<String> RESOURCES = new HashSet<>(
+      Arrays.asList("binaries", "contexts", "jobs", "data"));
+
+  private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+  /**
+   * Metrics by endpoint name.
+   */
+  public Map<String, EndpointMetrics> getEndpoints() {
+    return new TreeMap<>(endpoints);
+  }
+
+  public EndpointMetrics endpoint(String name) {
+    return endpoints.computeIfAbsent(name, n -> new EndpointMetrics());
+  }
+
+  /**
+   * Human-readable report of all endpoints.
+   */
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    getEndpoints().forEach((name, metrics) -> sb.append(name).append(":\n").append(metrics)
+        .append('\n'));
+    return sb.toString();
+  }
+
+  @Override
+  public EventListener create(Call call) {
+    return new Listener(endpoint(endpointName(call.request())));
+  }
+
+  /**
+   * Name of the {@link JobServerService} method of a request. The resource is looked up in the
+   * path rather than taken as its first segment, so a server behind a path prefix is named
+   * alike.
+   */
+  static String endpointName(Request request) {
+    List<String> path = request.url().pathSegments();
+    String method = request.method();
+    int start = 0;
+    while (start < path.size() && !RESOURCES.contains(path.get(start))) {
+      start++;
+    }
+    if (start == path.size()) {
+      return method + " /" + path.get(0);
+    }
+    String resource = path.get(start);
+    int end = path.get(path.size() - 1).isEmpty() ? path.size() - 1 : path.size();
+    int depth = end - start;
+    switch (resource) {
+      case "binaries":
+        return depth <= 1 ? "getBinaries"
+            : "POST".equals(method) ? "uploadJar" : "deleteBinary";
+      case "contexts":
+        if ("PUT".equals(method)) {
+          return "resetAllContexts";
+        }
+        return depth <= 1 ? "getContexts" : "POST".equals(method) ? "createContext"
+            : "DELETE".equals(method) ? "deleteContext" : "getContext";
+      case "jobs":
+        if (depth <= 1) {
+          return "POST".equals(method) ? "startJob" : "getJobs";
+        }
+        return depth > 2 ? "getJobConfig" : "DELETE".equals(method) ? "killJob" : "getJobInfo";
+      case "data":
+        if ("PUT".equals(method)) {
+          return "resetData";
+        }
+        return depth <= 1 ? "getData" : "POST".equals(method) ? "uploadData" : "deleteData";
+      default:
+        return method + " /" + resource;
+    }
+  }
+
+  private static final class Listener extends EventListener {
+    private final EndpointMetrics metrics;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long tlsStart;
+    private long requestStart;
+    private long requestEnd;
+    private long bodyStart;
+
+    Listener(EndpointMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void callStart(Call call) {
+      callStart = System.nanoTime();
+      metrics.inFlight.increment();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+      dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+      metrics.record(Phase.DNS, System.nanoTime() - dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+      connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+      tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+      metrics.record(Phase.TLS, System.nanoTime() - tlsStart);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress address, Proxy proxy,
+                           Protocol protocol) {
+      metrics.record(Phase.CONNECT, System.nanoTime() - connectStart);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+      requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+      requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+      requestEnd = System.nanoTime();
+      metrics.bytesOut.add(byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+      metrics.record(Phase.REQUEST, requestEnd - requestStart);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+      // called once the headers are read, responseHeadersStart is called before waiting for them
+      metrics.record(Phase.TTFB, System.nanoTime() - requestEnd);
+      if (response.code() >= 400) {
+        metrics.error(response.code());
+      }
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+      bodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+      metrics.bytesIn.add(byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+      long now = System.nanoTime();
+      if (bodyStart != 0) {
+        metrics.record(Phase.BODY, now - bodyStart);
+      }
+      metrics.record(Phase.TOTAL, now - callStart);
+      metrics.inFlight.decrement();
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+      metrics.record(Phase.TOTAL, System.nanoTime() - callStart);
+      metrics.error(0);
+      metrics.inFlight.decrement();
+    }
+  }
+}
@@ -0,0 +1,289 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Keeps warm Spark contexts and leases them to jobs, so starting a job does not wait for a
+ * context to boot.
+ *
+ * <p>Each profile, a name with its {@link SparkConf} or {@link SparkConst}, has a warm size: a
+ * background thread creates contexts until that many are idle or leased, drops idle contexts
+ * the server no longer lists, and deletes idle contexts beyond the warm size once they have
+ * been idle too long. A lease with no idle context creates one on the caller's thread.
+ */
+public class ContextPool implements Closeable {
+  private static final Logger LOG = Logger.getLogger(ContextPool.class);
+
+  private final JobServerService service;
+  private final int warmSize;
+  private final long idleTimeoutNanos;
+  private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final ScheduledExecutorService scheduler;
+
+  private static final class Profile {
+    final String name;
+    final Map<String, Object> params;
+    final Deque<Idle> idle = new ArrayDeque<>();
+    int creating;
+    int leased;
+
+    Profile(String name, Map<String, Object> params) {
+      this.name = name;
+      this.params = params;
+    }
+  }
+
+  private static final class Idle {
+    final String context;
+    final long sinceNanos;
+
+    Idle(String context, long sinceNanos) {
+      this.context = context;
+      this.sinceNanos = sinceNanos;
+    }
+  }
+
+  /**
+   * A context leased to the caller, close it to give it back to the pool.
+   */
+  public final class Lease implements Closeable {
+    private final Profile profile;
+    private final String context;
+    private boolean released;
+
+    private Lease(Profile profile, String context) {
+      this.profile = profile;
+      this.context = context;
+    }
+
+    /**
+     * Context name.
+     */
+    public String context() {
+      return context;
+    }
+
+    /**
+     * Start a job in the leased context.
+     */
+    public JobInfo startJob(SparkConf conf) throws IOException {
+      // leave the caller's conf untouched, it may be a template shared by several leases
+      Map<String, Object> params = conf.toMap();
+      params.put("context", context);
+      Response<JobInfo> response = service.startJob(params).execute();
+      if (!response.isSuccessful()) {
+        throw new HttpException(response);
+      }
+      return response.body();
+    }
+
+    /**
+     * Delete the context instead of giving it back, e.g. after it failed.
+     */
+    public void discard() {
+      if (release()) {
+        delete(context);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (release()) {
+        synchronized (profile) {
+          profile.idle.addFirst(new Idle(context, System.nanoTime()));
+        }
+      }
+    }
+
+    private boolean release() {
+      synchronized (profile) {
+        if (released) {
+          return false;
+        }
+        released = true;
+        profile.leased--;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param service Job server.
+   * @param warmSize Number of contexts kept per profile.
+   * @param idleTimeout How long a context beyond the warm size may stay idle.
+   * @param unit Unit of idleTimeout.
+   */
+  public ContextPool(JobServerService service, int warmSize, long idleTimeout, TimeUnit unit) {
+    this.service = service;
+    this.warmSize = warmSize;
+    this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "jobserver-context-pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1, Math.min(TimeUnit.SECONDS.toMillis(30),
+        TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2));
+    scheduler.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Register a profile and start warming its contexts.
+   *
+   * @param name Profile name, a prefix of its context names.
+   * @param conf Context configuration.
+   */
+  public ContextPool register(String name, Mapping conf) {
+    profiles.putIfAbsent(name, new Profile(name, conf.toMap()));
+    scheduler.execute(this::replenish);
+    return this;
+  }
+
+  /**
+   * Lease a context of a profile.
+   *
+   * @param name Profile name.
+   * @return Lease, close it to give the context back.
+   * @throws IOException If a context has to be created and that fails.
+   */
+  public Lease lease(String name) throws IOException {
+    Profile profile = profiles.get(name);
+    if (profile == null) {
+      throw new IllegalArgumentException("Unknown profile: " + name);
+    }
+    Idle idle;
+    synchronized (profile) {
+      idle = profile.idle.pollFirst();
+      // a context created below is counted as leased only, so replenish sees it once
+      profile.leased++;
+    }
+    if (idle != null) {
+      scheduler.execute(this::replenish);
+      return new Lease(profile, idle.context);
+    }
+    try {
+      return new Lease(profile, create(profile));
+    } catch (IOException | RuntimeException e) {
+      synchronized (profile) {
+        profile.leased--;
+      }
+      throw e;
+    }
+  }
+
+  private String create(Profile profile) throws IOException {
+    String context = profile.name + "-" + System.currentTimeMillis() + "-"
+        + sequence.incrementAndGet();
+    Response<Result> response = service.createContext(context, profile.params).execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    return context;
+  }
+
+  private void delete(String context) {
+    try {
+      service.deleteContext(context).execute();
+    } catch (IOException e) {
+      LOG.warn("Failed to delete context " + context, e);
+    }
+  }
+
+  private void replenish() {
+    for (Profile profile : profiles.values()) {
+      while (true) {
+        synchronized (profile) {
+          if (profile.idle.size() + profile.leased + profile.creating >= warmSize) {
+            break;
+          }
+          profile.creating++;
+        }
+        String context = null;
+        try {
+          context = create(profile);
+        } catch (IOException | RuntimeException e) {
+          LOG.warn("Failed to create context for " + profile.name, e);
+        }
+        synchronized (profile) {
+          profile.creating--;
+          if (context != null) {
+            profile.idle.addFirst(new Idle(context, System.nanoTime()));
+          }
+        }
+        if (context == null) {
+          break;
+        }
+      }
+    }
+  }
+
+  private void maintain() {
+    try {
+      Response<List<String>> response = service.getContexts().execute();
+      if (response.isSuccessful() && response.body() != null) {
+        Set<String> alive = new HashSet<>(response.body());
+        for (Profile profile : profiles.values()) {
+          synchronized (profile) {
+            profile.idle.removeIf(idle -> !alive.contains(idle.context));
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to list contexts", e);
+    }
+
+    long now = System.nanoTime();
+    List<String> evicted = new ArrayList<>();
+    for (Profile profile : profiles.values()) {
+      synchronized (profile) {
+        // oldest idle contexts are at the tail
+        Iterator<Idle> it = profile.idle.descendingIterator();
+        while (it.hasNext() && profile.idle.size() + profile.leased > warmSize) {
+          Idle idle = it.next();
+          if (now - idle.sinceNanos < idleTimeoutNanos) {
+            break;
+          }
+          it.remove();
+          evicted.add(idle.context);
+        }
+      }
+    }
+    evicted.forEach(this::delete);
+    replenish();
+  }
+
+  /**
+   * Stop warming and delete idle contexts, leased ones are left to their holders.
+   */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    for (Profile profile : profiles.values()) {
+      List<String> idle = new ArrayList<>();
+      synchronized (profile) {
+        profile.idle.forEach(i -> idle.add(i.context));
+        profile.idle.clear();
+      }
+      idle.forEach(this::delete);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package spark.jobserver.client;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field keys and getters of a {@link Mapping} class, resolved once per class.
+ */
+final class FieldAccessors {
+  static final ClassValue<FieldAccessors> CACHE = new ClassValue<FieldAccessors>() {
+    @Override
+    protected FieldAccessors computeValue(Class<?> type) {
+      return new FieldAccessors(type);
+    }
+  };
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class,
+      Object.class);
+
+  private final String[] keys;
+  private final MethodHandle[] getters;
+  private final int capacity;
+
+  private FieldAccessors(Class<?> type) {
+    List<String> keys = new ArrayList<>();
+    List<MethodHandle> getters = new ArrayList<>();
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    for (Field field : type.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+        continue;
+      }
+      SerializedName name = field.getAnnotation(SerializedName.class);
+      keys.add(name == null ? field.getName() : name.value());
+      try {
+        field.setAccessible(true);
+        getters.add(lookup.unreflectGetter(field).asType(GETTER_TYPE));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e.getMessage() + ": " + field.getName(), e);
+      }
+    }
+    this.keys = keys.toArray(new String[0]);
+    this.getters = getters.toArray(new MethodHandle[0]);
+    this.capacity = (int) (this.keys.length / 0.75f) + 1;
+  }
+
+  Map<String, Object> toMap(Object bean) {
+    Map<String, Object> result = new HashMap<>(capacity);
+    for (int i = 0; i < keys.length; i++) {
+      Object value;
+      try {
+        value = (Object) getters[i].invokeExact(bean);
+      } catch (Throwable e) {
+        throw new IllegalStateException(e.getMessage() + ": " + keys[i], e);
+      }
+      if (value != null) {
+        result.put(keys[i], value);
+      }
+    }
+    return result;
+  }
+}
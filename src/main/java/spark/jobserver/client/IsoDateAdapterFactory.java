@@ -0,0 +1,213 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Lock-free ISO-8601 adapters of {@link Date} and {@link Instant}, replacing Gson's default
+ * date adapter which synchronizes on a shared <code>DateFormat</code> and tries several
+ * patterns in turn.
+ *
+ * <p>Reads <code>yyyy-MM-dd['T'HH:mm[:ss[.S...]]][Z|&plusmn;hh[[:]mm]]</code> in one pass over
+ * the string, a missing offset means UTC. Gson's default US format is still accepted. Writes
+ * UTC with millisecond precision, e.g. <code>2018-04-30T02:12:33.123Z</code>.
+ */
+public class IsoDateAdapterFactory implements TypeAdapterFactory {
+  private static final DateTimeFormatter LEGACY =
+      DateTimeFormatter.ofPattern("MMM d, yyyy h:mm:ss a", Locale.US);
+
+  private static final TypeAdapter<Date> DATE_ADAPTER = new TypeAdapter<Date>() {
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else {
+        out.value(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(value.getTime())));
+      }
+    }
+
+    @Override
+    public Date read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return new Date(parseMillis(in.nextString()));
+    }
+  };
+
+  private static final TypeAdapter<Instant> INSTANT_ADAPTER = new TypeAdapter<Instant>() {
+    @Override
+    public void write(JsonWriter out, Instant value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+      } else {
+        out.value(DateTimeFormatter.ISO_INSTANT.format(value));
+      }
+    }
+
+    @Override
+    public Instant read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return Instant.ofEpochMilli(parseMillis(in.nextString()));
+    }
+  };
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+    if (type.getRawType() == Date.class) {
+      return (TypeAdapter<T>) DATE_ADAPTER;
+    }
+    if (type.getRawType() == Instant.class) {
+      return (TypeAdapter<T>) INSTANT_ADAPTER;
+    }
+    return null;
+  }
+
+  /**
+   * Parse an ISO-8601 date time to epoch millis.
+   *
+   * @throws JsonSyntaxException If the date is neither ISO-8601 nor in Gson's default format.
+   */
+  public static long parseMillis(String s) {
+    long millis = parseIso(s);
+    if (millis != Long.MIN_VALUE) {
+      return millis;
+    }
+    try {
+      return LocalDateTime.parse(s, LEGACY).atZone(ZoneId.systemDefault()).toInstant()
+          .toEpochMilli();
+    } catch (DateTimeParseException e) {
+      throw new JsonSyntaxException("Invalid date: " + s, e);
+    }
+  }
+
+  /**
+   * @return Epoch millis, or {@link Long#MIN_VALUE} if not ISO-8601.
+   */
+  private static long parseIso(String s) {
+    int length = s.length();
+    if (length < 10 || s.charAt(4) != '-' || s.charAt(7) != '-') {
+      return Long.MIN_VALUE;
+    }
+    int year = digits(s, 0, 4);
+    int month = digits(s, 5, 2);
+    int day = digits(s, 8, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+      return Long.MIN_VALUE;
+    }
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+    int offsetSeconds = 0;
+    int i = 10;
+    if (i < length && (s.charAt(i) == 'T' || s.charAt(i) == ' ')) {
+      if (i + 6 > length || s.charAt(i + 3) != ':') {
+        return Long.MIN_VALUE;
+      }
+      hour = digits(s, i + 1, 2);
+      minute = digits(s, i + 4, 2);
+      i += 6;
+      if (i < length && s.charAt(i) == ':') {
+        second = digits(s, i + 1, 2);
+        i += 3;
+        if (i < length && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+          int scale = 100;
+          i++;
+          int start = i;
+          while (i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            millis += (s.charAt(i) - '0') * scale;
+            scale /= 10;
+            i++;
+          }
+          if (i == start) {
+            return Long.MIN_VALUE;
+          }
+        }
+      }
+      if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+        return Long.MIN_VALUE;
+      }
+    }
+    if (i < length) {
+      char c = s.charAt(i);
+      if (c == 'Z' && i + 1 == length) {
+        i++;
+      } else if (c == '+' || c == '-') {
+        int rest = length - i - 1;
+        int hours = rest >= 2 ? digits(s, i + 1, 2) : -1;
+        int minutes;
+        if (rest == 2) {
+          minutes = 0;
+        } else if (rest == 4) {
+          minutes = digits(s, i + 3, 2);
+        } else if (rest == 5 && s.charAt(i + 3) == ':') {
+          minutes = digits(s, i + 4, 2);
+        } else {
+          return Long.MIN_VALUE;
+        }
+        if (hours < 0 || minutes < 0) {
+          return Long.MIN_VALUE;
+        }
+        offsetSeconds = (c == '-' ? -1 : 1) * (hours * 3600 + minutes * 60);
+        i = length;
+      }
+    }
+    if (i != length) {
+      return Long.MIN_VALUE;
+    }
+    long seconds = epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second
+        - offsetSeconds;
+    return seconds * 1000 + millis;
+  }
+
+  /**
+   * Non-negative decimal number of <code>count</code> digits at <code>from</code>, -1 if none.
+   */
+  private static int digits(String s, int from, int count) {
+    if (from + count > s.length()) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = from; i < from + count; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + c - '0';
+    }
+    return value;
+  }
+
+  /**
+   * Days since 1970-01-01 of a proleptic Gregorian date.
+   */
+  private static long epochDay(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+}
@@ -0,0 +1,105 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+import okio.BufferedSource;
+import okio.HashingSink;
+import okio.Okio;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Skips uploading a jar the job server already has.
+ *
+ * <p>A jar is identified by the SHA-256 of its content. After each upload the index records
+ * <code>hash/appName</code> with the server's upload time of that binary; a later upload of the
+ * same content under the same name is skipped as long as {@link JobServerService#getBinaries()}
+ * still reports that upload time. The index is kept in a properties file, one per job server.
+ */
+public class JarDeduplicator {
+  private final JobServerService service;
+  private final Path indexFile;
+  private final Properties index = new Properties();
+
+  /**
+   * @param service Job server.
+   * @param indexFile Index of uploaded jars of this job server, created if missing.
+   * @throws IOException If the index cannot be read.
+   */
+  public JarDeduplicator(JobServerService service, Path indexFile) throws IOException {
+    this.service = service;
+    this.indexFile = indexFile;
+    if (Files.exists(indexFile)) {
+      try (InputStream in = Files.newInputStream(indexFile)) {
+        index.load(in);
+      }
+    }
+  }
+
+  /**
+   * Upload a jar unless the server has it already.
+   *
+   * @param appName App name.
+   * @param jar Jar file path.
+   * @return Whether the jar was uploaded.
+   * @throws IOException Io exception.
+   */
+  public synchronized boolean upload(String appName, Path jar) throws IOException {
+    String key = hash(jar) + "/" + appName;
+    String recorded = index.getProperty(key);
+    if (recorded != null && recorded.equals(uploadTime(appName))) {
+      return false;
+    }
+
+    Response<String> response = service.uploadJar(appName, UploadBody.of(jar, UploadBody.JAR))
+        .execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    String uploadTime = uploadTime(appName);
+    // drop older versions of the app
+    index.keySet().removeIf(k -> ((String) k).endsWith("/" + appName));
+    if (uploadTime != null) {
+      index.setProperty(key, uploadTime);
+    }
+    save();
+    return true;
+  }
+
+  private String uploadTime(String appName) throws IOException {
+    Response<? extends Map<String, Binary>> response = service.getBinaries().execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    Binary binary = response.body().get(appName);
+    return binary == null || binary.getUploadTime() == null ? null
+        : String.valueOf(binary.getUploadTime().getTime());
+  }
+
+  private void save() throws IOException {
+    Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      index.store(out, "jar hash/app name = upload time");
+    }
+    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * SHA-256 of a file as a hex string.
+   */
+  static String hash(Path file) throws IOException {
+    try (BufferedSource source = Okio.buffer(Okio.source(file));
+         HashingSink sink = HashingSink.sha256(Okio.blackhole())) {
+      source.readAll(sink);
+      return sink.hash().hex();
+    }
+  }
+}
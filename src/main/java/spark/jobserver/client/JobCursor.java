@@ -0,0 +1,73 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Lazily pages through the latest jobs with <code>GET /jobs?status=..&amp;limit=..</code>.
+ *
+ * <p>The job server has no offset parameter, so each page asks for twice as many jobs as the
+ * previous one and skips the jobs already returned. A caller reading only the first few jobs,
+ * e.g. what is running right now, downloads only the first page.
+ */
+public class JobCursor implements Iterator<JobInfo> {
+  private final JobServerService service;
+  private final JobStatus status;
+  private final Set<String> seen = new HashSet<>();
+  private final Queue<JobInfo> page = new ArrayDeque<>();
+  private int limit;
+  private boolean last;
+
+  /**
+   * @param service Job server.
+   * @param status Status of jobs to return, all if null.
+   * @param firstPage Size of the first page.
+   */
+  public JobCursor(JobServerService service, JobStatus status, int firstPage) {
+    if (firstPage <= 0) {
+      throw new IllegalArgumentException("firstPage must be positive: " + firstPage);
+    }
+    this.service = service;
+    this.status = status;
+    this.limit = firstPage;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (page.isEmpty() && !last) {
+      fetch();
+    }
+    return !page.isEmpty();
+  }
+
+  @Override
+  public JobInfo next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return page.poll();
+  }
+
+  private void fetch() {
+    int count = 0;
+    try (JobInfoIterator jobs = service.streamJobs(status, limit, info -> true)) {
+      while (jobs.hasNext()) {
+        JobInfo info = jobs.next();
+        count++;
+        if (seen.add(info.getJobId())) {
+          page.add(info);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    last = count < limit || limit > Integer.MAX_VALUE / 2;
+    limit *= 2;
+  }
+}
@@ -16,15 +16,33 @@
 
 package spark.jobserver.client;
 
+import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
 import java.util.Date;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 /**
  * Presents the information of spark job result, when calling
  * <code>GET /jobs/&lt;jobId&gt;</code> to a spark job server.
+ *
+ * <p>The job result is copied as raw json, token by token without building objects, and
+ * decoded on demand by {@link #result(Class)}, with {@link JobServerClientBuilder#defaultGson()}
+ * unless a Gson is given, e.g. the one given to {@link JobServerClientBuilder#gson(Gson)}. A
+ * status check still reads and holds the whole result: check jobs with large results with
+ * {@link JobServerService#getJobs(JobStatus, Integer)} or a {@link JobTracker}, whose listing
+ * carries no result.
  */
 @Data
+@ToString(exclude = {"decoded", "decodedType", "decodedGson"})
 public class JobInfo {
   private String jobId;
   private JobStatus status;
@@ -32,7 +50,75 @@ public class JobInfo {
   private String classPath;
   private String duration;
   private Date startTime;
-  private Result result;  //we do not know its class type
+  /**
+   * Raw json of the job result, its type depends on the job.
+   */
+  @SerializedName("result")
+  @JsonAdapter(RawJsonAdapter.class)
+  private String resultJson;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient Object decoded;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient Type decodedType;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient Gson decodedGson;
+
+  /**
+   * Decode the job result, once for successive calls with the same type.
+   *
+   * @return The result, null if none.
+   */
+  public <T> T result(Class<T> type) {
+    return result(TypeToken.get(type));
+  }
+
+  /**
+   * Decode the job result with the given Gson, e.g. one with adapters of the result types.
+   */
+  public <T> T result(Class<T> type, Gson gson) {
+    return result(TypeToken.get(type), gson);
+  }
+
+  /**
+   * Decode a generic job result, e.g. <code>new TypeToken&lt;List&lt;String&gt;&gt;() {}</code>.
+   */
+  public <T> T result(TypeToken<T> type) {
+    return result(type, JobServerClientBuilder.defaultGson());
+  }
+
+  @SuppressWarnings("unchecked")
+  public synchronized <T> T result(TypeToken<T> type, Gson gson) {
+    if (resultJson == null) {
+      return null;
+    }
+    if (!type.getType().equals(decodedType) || gson != decodedGson) {
+      decoded = gson.fromJson(resultJson, type.getType());
+      decodedType = type.getType();
+      decodedGson = gson;
+    }
+    return (T) decoded;
+  }
+
+  /**
+   * Error of a failed job, null if the result is not an object.
+   */
+  public Result getResult() {
+    return resultJson == null || !resultJson.startsWith("{") ? null : result(Result.class);
+  }
+
+  public synchronized void setResult(Result result) {
+    setResultJson(result == null ? null : JobServerClientBuilder.defaultGson().toJson(result));
+  }
+
+  public synchronized void setResultJson(String resultJson) {
+    this.resultJson = resultJson;
+    this.decoded = null;
+    this.decodedType = null;
+    this.decodedGson = null;
+  }
 
   @Data
   public static class Result {
@@ -0,0 +1,101 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Reads a <code>GET /jobs</code> response one {@link JobInfo} at a time, so memory is bounded by
+ * one job rather than by the server's job history.
+ *
+ * <p>Close the iterator, or the stream from {@link #stream()}, to stop early and release the
+ * connection; it is closed automatically once the last job is read.
+ */
+public class JobInfoIterator implements Iterator<JobInfo>, Closeable {
+  private final ResponseBody body;
+  private final JsonReader reader;
+  private final Gson gson;
+  private final Predicate<? super JobInfo> filter;
+  private JobInfo next;
+  private boolean started;
+  private boolean closed;
+
+  /**
+   * @param body Response body, a json array of jobs.
+   * @param gson Gson to decode jobs.
+   * @param filter Jobs to return, others are skipped.
+   */
+  public JobInfoIterator(ResponseBody body, Gson gson, Predicate<? super JobInfo> filter) {
+    this.body = body;
+    this.reader = new JsonReader(body.charStream());
+    this.gson = gson;
+    this.filter = filter;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next != null) {
+      return true;
+    }
+    if (closed) {
+      return false;
+    }
+    try {
+      if (!started) {
+        reader.beginArray();
+        started = true;
+      }
+      while (reader.hasNext()) {
+        JobInfo info = gson.fromJson(reader, JobInfo.class);
+        if (filter.test(info)) {
+          next = info;
+          return true;
+        }
+      }
+      reader.endArray();
+      close();
+      return false;
+    } catch (IOException e) {
+      close();
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public JobInfo next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    JobInfo info = next;
+    next = null;
+    return info;
+  }
+
+  /**
+   * Remaining jobs as a sequential stream, closing it closes this iterator.
+   */
+  public Stream<JobInfo> stream() {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+        Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      body.close();
+    }
+  }
+}
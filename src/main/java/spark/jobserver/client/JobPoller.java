@@ -0,0 +1,299 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import retrofit2.HttpException;
+
+/**
+ * Waits for many jobs on a single thread driving a hashed-wheel timer.
+ *
+ * <p>A job is checked often right after it starts, then less often as it runs longer: the
+ * interval is a fraction of the time waited so far, bounded and jittered. Checks are aligned
+ * to timer ticks, and when many jobs are due in the same tick they share one
+ * <code>GET /jobs</code> listing instead of one <code>GET /jobs/&lt;jobId&gt;</code> each.
+ * A listing asks for twice as many jobs as are waiting, so the due ones are in it even when
+ * newer jobs were started meanwhile. A waiting job costs one small entry, re-used for all of
+ * its checks.
+ *
+ * <p>Configure the poller before the first {@link #awaitCompletion(String, Instant)}.
+ */
+public class JobPoller implements Closeable {
+  private static final int WHEEL_SIZE = 512;
+
+  private final AsyncJobServerService service;
+  private final long tickNanos;
+  private final Entry[] wheel = new Entry[WHEEL_SIZE];
+  private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private long minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(500);
+  private long maxIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+  private double backoff = 0.2;
+  private double jitter = 0.2;
+  private int batchThreshold = 16;
+  private volatile boolean running;
+  private volatile boolean closed;
+  private Thread worker;
+  private long startNanos;
+  private long tick;
+
+  private static final class Entry {
+    final String jobId;
+    final CompletableFuture<JobInfo> future;
+    final long startNanos;
+    final long deadlineNanos;
+    long checkNanos;
+    long remainingRounds;
+    Entry next;
+
+    Entry(String jobId, CompletableFuture<JobInfo> future, long startNanos, long deadlineNanos) {
+      this.jobId = jobId;
+      this.future = future;
+      this.startNanos = startNanos;
+      this.deadlineNanos = deadlineNanos;
+    }
+  }
+
+  /**
+   * Poller with a tick of 100 milliseconds.
+   */
+  public JobPoller(JobServerService service) {
+    this(service, 100, TimeUnit.MILLISECONDS);
+  }
+
+  public JobPoller(JobServerService service, long tick, TimeUnit unit) {
+    this.service = new AsyncJobServerService(service);
+    this.tickNanos = unit.toNanos(tick);
+  }
+
+  /**
+   * Bounds of the interval between two checks of a job, 500 milliseconds to 30 seconds by
+   * default.
+   */
+  public JobPoller interval(long min, long max, TimeUnit unit) {
+    this.minIntervalNanos = unit.toNanos(min);
+    this.maxIntervalNanos = unit.toNanos(max);
+    return this;
+  }
+
+  /**
+   * Interval as a fraction of the time waited so far, 0.2 by default.
+   */
+  public JobPoller backoff(double backoff) {
+    this.backoff = backoff;
+    return this;
+  }
+
+  /**
+   * Random spread of intervals, 0.2 (plus or minus 20%) by default.
+   */
+  public JobPoller jitter(double jitter) {
+    this.jitter = jitter;
+    return this;
+  }
+
+  /**
+   * Min number of jobs due in the same tick to check them with one listing, 16 by default.
+   */
+  public JobPoller batchThreshold(int batchThreshold) {
+    this.batchThreshold = batchThreshold;
+    return this;
+  }
+
+  /**
+   * Wait for a job to finish or fail.
+   *
+   * @param jobId Job id.
+   * @param deadline When to give up.
+   * @return Future completed with the job info, or exceptionally with a
+   *     {@link TimeoutException} once past the deadline. Cancel it to stop waiting.
+   * @throws IllegalStateException If the poller is closed.
+   */
+  public CompletableFuture<JobInfo> awaitCompletion(String jobId, Instant deadline) {
+    long timeout = Math.max(0, deadline.toEpochMilli() - System.currentTimeMillis());
+    return awaitCompletion(jobId, timeout, TimeUnit.MILLISECONDS);
+  }
+
+  public CompletableFuture<JobInfo> awaitCompletion(String jobId, long timeout, TimeUnit unit) {
+    start();
+    long now = System.nanoTime();
+    CompletableFuture<JobInfo> future = new CompletableFuture<>();
+    waiting.incrementAndGet();
+    future.whenComplete((info, error) -> waiting.decrementAndGet());
+    Entry entry = new Entry(jobId, future, now, now + unit.toNanos(timeout));
+    entry.checkNanos = now + minIntervalNanos;
+    pending.add(entry);
+    if (closed) {
+      cancelPending();
+    }
+    return future;
+  }
+
+  private synchronized void start() {
+    if (closed) {
+      throw new IllegalStateException("Poller closed");
+    }
+    if (running) {
+      return;
+    }
+    running = true;
+    startNanos = System.nanoTime();
+    worker = new Thread(this::run, "jobserver-job-poller");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  private void run() {
+    List<Entry> due = new ArrayList<>();
+    while (running) {
+      long sleep = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+      while (sleep > 0 && running) {
+        LockSupport.parkNanos(this, sleep);
+        sleep = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+      }
+      transferPending();
+      expire(tick & (WHEEL_SIZE - 1), due);
+      tick++;
+      if (!due.isEmpty()) {
+        check(due);
+        due = new ArrayList<>();
+      }
+    }
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      for (Entry entry = wheel[i]; entry != null; entry = entry.next) {
+        entry.future.cancel(false);
+      }
+      wheel[i] = null;
+    }
+    cancelPending();
+  }
+
+  private void cancelPending() {
+    for (Entry entry = pending.poll(); entry != null; entry = pending.poll()) {
+      entry.future.cancel(false);
+    }
+  }
+
+  private void transferPending() {
+    for (Entry entry = pending.poll(); entry != null; entry = pending.poll()) {
+      long calculated = (entry.checkNanos - startNanos) / tickNanos;
+      entry.remainingRounds = Math.max(0, (calculated - tick) / WHEEL_SIZE);
+      int index = (int) (Math.max(calculated, tick) & (WHEEL_SIZE - 1));
+      entry.next = wheel[index];
+      wheel[index] = entry;
+    }
+  }
+
+  private void expire(long index, List<Entry> due) {
+    Entry previous = null;
+    Entry entry = wheel[(int) index];
+    while (entry != null) {
+      Entry next = entry.next;
+      if (entry.remainingRounds <= 0 || entry.future.isDone()) {
+        if (previous == null) {
+          wheel[(int) index] = next;
+        } else {
+          previous.next = next;
+        }
+        entry.next = null;
+        if (!entry.future.isDone()) {
+          due.add(entry);
+        }
+      } else {
+        entry.remainingRounds--;
+        previous = entry;
+      }
+      entry = next;
+    }
+  }
+
+  private void check(List<Entry> due) {
+    if (due.size() < batchThreshold) {
+      due.forEach(this::checkOne);
+      return;
+    }
+    // cover all waiting jobs, not only the due ones, since newer jobs are listed first
+    int limit = JobTracker.listingLimit(Math.max(due.size(), waiting.get()));
+    service.getJobs(null, limit).whenComplete((jobs, error) -> {
+      if (error != null) {
+        due.forEach(this::reschedule);
+        return;
+      }
+      Map<String, JobInfo> listed = new HashMap<>(jobs.size() * 4 / 3 + 1);
+      for (JobInfo info : jobs) {
+        listed.put(info.getJobId(), info);
+      }
+      for (Entry entry : due) {
+        JobInfo info = listed.get(entry.jobId);
+        if (info == null || (info.getStatus() != null && info.getStatus().isTerminal())) {
+          // missing from the listing, or done and the result is needed
+          checkOne(entry);
+        } else {
+          reschedule(entry);
+        }
+      }
+    });
+  }
+
+  private void checkOne(Entry entry) {
+    service.getJobInfo(entry.jobId).whenComplete((info, error) -> {
+      if (error instanceof HttpException && ((HttpException) error).code() == 404) {
+        entry.future.completeExceptionally(error);
+      } else if (info != null && info.getStatus() != null && info.getStatus().isTerminal()) {
+        entry.future.complete(info);
+      } else {
+        reschedule(entry);
+      }
+    });
+  }
+
+  private void reschedule(Entry entry) {
+    long now = System.nanoTime();
+    if (now >= entry.deadlineNanos) {
+      entry.future.completeExceptionally(new TimeoutException("Job " + entry.jobId
+          + " is not completed before the deadline"));
+      return;
+    }
+    if (entry.future.isDone()) {
+      return;
+    }
+    if (closed) {
+      entry.future.cancel(false);
+      return;
+    }
+    double interval = Math.min(maxIntervalNanos,
+        Math.max(minIntervalNanos, (now - entry.startNanos) * backoff));
+    interval *= 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    entry.checkNanos = Math.min(entry.deadlineNanos, now + (long) interval);
+    pending.add(entry);
+    if (closed) {
+      cancelPending();
+    }
+  }
+
+  /**
+   * Stop the timer thread and cancel the futures still waiting. The poller can't be used
+   * afterwards.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    running = false;
+    if (worker != null) {
+      LockSupport.unpark(worker);
+      worker = null;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Reads the result of a job response, <code>GET /jobs/&lt;jobId&gt;</code> or a synchronous
+ * <code>POST /jobs</code>, without loading it in memory.
+ *
+ * <p>The result is decoded one array element at a time, or copied as json to a channel or a
+ * file token by token, so memory is bounded by one element or one token. A reader is used
+ * once, then closed to release the connection. Elements are decoded with
+ * {@link JobServerClientBuilder#defaultGson()} unless a Gson is given.
+ *
+ * <p>Streaming holds only if no interceptor of the client reads the whole body first.
+ * {@link ResponseCache} leaves job responses alone, {@link TerminalJobCache} and
+ * {@link SingleFlight} buffer at most their max entry or body size, 1 MB by default, then pass a
+ * larger response through. An interceptor logging bodies, e.g. OkHttp's
+ * <code>HttpLoggingInterceptor</code> at <code>BODY</code> level, loads it all.
+ */
+public class JobResultReader implements Closeable {
+  private final ResponseBody body;
+  private final JsonReader reader;
+  private final Gson gson;
+  private long bytesRead;
+  private String jobId;
+  private JobStatus status;
+  private boolean consumed;
+
+  public JobResultReader(ResponseBody body) {
+    this(body, JobServerClientBuilder.defaultGson());
+  }
+
+  /**
+   * @param gson Gson to decode the elements, e.g. the one given to
+   *     {@link JobServerClientBuilder#gson(Gson)}.
+   */
+  public JobResultReader(ResponseBody body, Gson gson) {
+    this.body = body;
+    this.gson = gson;
+    ForwardingSource counting = new ForwardingSource(body.source()) {
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read > 0) {
+          bytesRead += read;
+        }
+        return read;
+      }
+    };
+    this.reader = new JsonReader(new InputStreamReader(Okio.buffer(counting).inputStream(),
+        StandardCharsets.UTF_8));
+    this.reader.setLenient(true);
+  }
+
+  /**
+   * Execute a streaming call, e.g. {@link JobServerService#getJobInfoBody(String)}.
+   *
+   * @throws HttpException If the response is not successful.
+   */
+  public static JobResultReader execute(Call<ResponseBody> call) throws IOException {
+    return execute(call, JobServerClientBuilder.defaultGson());
+  }
+
+  public static JobResultReader execute(Call<ResponseBody> call, Gson gson) throws IOException {
+    Response<ResponseBody> response = call.execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    return new JobResultReader(response.body(), gson);
+  }
+
+  /**
+   * Decode the result one element at a time, a result which is not an array is one element.
+   *
+   * @return Number of bytes read from the response.
+   */
+  public long forEach(Consumer<? super JsonElement> consumer) throws IOException {
+    return forEach(JsonElement.class, consumer);
+  }
+
+  /**
+   * Decode the result one element at a time to the given type, e.g. a row class.
+   *
+   * @return Number of bytes read from the response.
+   */
+  public <T> long forEach(Class<T> type, Consumer<? super T> consumer) throws IOException {
+    TypeAdapter<T> elements = gson.getAdapter(type);
+    if (seek()) {
+      if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          consumer.accept(elements.read(reader));
+        }
+        reader.endArray();
+      } else {
+        consumer.accept(elements.read(reader));
+      }
+    }
+    return bytesRead;
+  }
+
+  /**
+   * Write the result as json to a channel, which is left open.
+   *
+   * @return Number of bytes written.
+   */
+  public long transferTo(WritableByteChannel channel) throws IOException {
+    if (!seek()) {
+      return 0;
+    }
+    long[] written = new long[1];
+    BufferedSink sink = Okio.buffer(new ForwardingSink(
+        Okio.sink(Channels.newOutputStream(channel))) {
+      @Override
+      public void write(Buffer source, long byteCount) throws IOException {
+        super.write(source, byteCount);
+        written[0] += byteCount;
+      }
+    });
+    JsonWriter writer = new JsonWriter(new OutputStreamWriter(sink.outputStream(),
+        StandardCharsets.UTF_8));
+    writer.setLenient(true);
+    writer.setSerializeNulls(true);
+    RawJsonAdapter.copy(reader, writer);
+    // flushes without closing the channel
+    writer.flush();
+    return written[0];
+  }
+
+  /**
+   * Write the result as json to a file, replacing it if it exists.
+   *
+   * @return Number of bytes written.
+   */
+  public long transferTo(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      return transferTo(channel);
+    }
+  }
+
+  /**
+   * Bytes read from the response so far.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Job id, if sent before the result.
+   */
+  public String getJobId() {
+    return jobId;
+  }
+
+  /**
+   * Job status, if sent before the result.
+   */
+  public JobStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * Move to the result value.
+   *
+   * @return False if the response has no result.
+   */
+  private boolean seek() throws IOException {
+    if (consumed) {
+      throw new IllegalStateException("Result already read");
+    }
+    consumed = true;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("result".equals(name)) {
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          return false;
+        }
+        return true;
+      }
+      if (reader.peek() != JsonToken.STRING) {
+        reader.skipValue();
+      } else if ("jobId".equals(name)) {
+        jobId = reader.nextString();
+      } else if ("status".equals(name)) {
+        String value = reader.nextString();
+        try {
+          status = JobStatus.valueOf(value);
+        } catch (IllegalArgumentException e) {
+          status = null;
+        }
+      } else {
+        reader.skipValue();
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    body.close();
+  }
+}
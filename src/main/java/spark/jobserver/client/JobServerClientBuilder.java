@@ -0,0 +1,202 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Builds a {@link JobServerService} on top of a tunable OkHttp client.
+ *
+ * <p>Unlike OkHttp's defaults, the dispatcher allows as many concurrent calls to one host as
+ * in total, since a client normally talks to a single job server. Logging is off unless
+ * {@link #logLevel(LoggingInterceptor.Level)} is set.
+ */
+public class JobServerClientBuilder {
+  private static final Gson DEFAULT_GSON = new GsonBuilder().setLenient()
+      .registerTypeAdapterFactory(new IsoDateAdapterFactory())
+      .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+      .create();
+
+  private String baseUrl;
+  private Gson gson;
+  private int maxIdleConnections = 32;
+  private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+  private int maxRequests = 64;
+  private int maxRequestsPerHost = 64;
+  private ExecutorService dispatcherExecutor;
+  private long connectTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
+  private long readTimeoutMillis = TimeUnit.MINUTES.toMillis(3);
+  private long writeTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+  private boolean http2PriorKnowledge;
+  private LoggingInterceptor.Level logLevel = LoggingInterceptor.Level.NONE;
+  private final List<Interceptor> interceptors = new ArrayList<>();
+  private final List<Interceptor> networkInterceptors = new ArrayList<>();
+  private EventListener.Factory eventListenerFactory;
+
+  /**
+   * Job server url, e.g. <code>http://localhost:8090</code>.
+   */
+  public JobServerClientBuilder baseUrl(String baseUrl) {
+    this.baseUrl = baseUrl;
+    return this;
+  }
+
+  /**
+   * Gson used to decode responses, {@link #defaultGson()} if not set.
+   */
+  public JobServerClientBuilder gson(Gson gson) {
+    this.gson = gson;
+    return this;
+  }
+
+  /**
+   * Size and idle keep-alive of the connection pool.
+   */
+  public JobServerClientBuilder connectionPool(int maxIdleConnections, long keepAlive,
+                                               TimeUnit unit) {
+    this.maxIdleConnections = maxIdleConnections;
+    this.keepAliveMillis = unit.toMillis(keepAlive);
+    return this;
+  }
+
+  /**
+   * Max number of calls executing concurrently, queued calls wait for a free slot.
+   */
+  public JobServerClientBuilder maxRequests(int maxRequests) {
+    this.maxRequests = maxRequests;
+    return this;
+  }
+
+  /**
+   * Max number of calls executing concurrently against one host.
+   */
+  public JobServerClientBuilder maxRequestsPerHost(int maxRequestsPerHost) {
+    this.maxRequestsPerHost = maxRequestsPerHost;
+    return this;
+  }
+
+  /**
+   * Executor running asynchronous calls, OkHttp's cached thread pool if not set.
+   */
+  public JobServerClientBuilder dispatcherExecutor(ExecutorService dispatcherExecutor) {
+    this.dispatcherExecutor = dispatcherExecutor;
+    return this;
+  }
+
+  public JobServerClientBuilder connectTimeout(long timeout, TimeUnit unit) {
+    this.connectTimeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
+  public JobServerClientBuilder readTimeout(long timeout, TimeUnit unit) {
+    this.readTimeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
+  public JobServerClientBuilder writeTimeout(long timeout, TimeUnit unit) {
+    this.writeTimeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
+  /**
+   * Speak cleartext HTTP/2 (h2c) without an upgrade, the server must support it.
+   */
+  public JobServerClientBuilder http2PriorKnowledge(boolean http2PriorKnowledge) {
+    this.http2PriorKnowledge = http2PriorKnowledge;
+    return this;
+  }
+
+  /**
+   * Log level of requests and responses, written to log4j at debug level. Add a configured
+   * {@link LoggingInterceptor} instead to tune body sampling.
+   */
+  public JobServerClientBuilder logLevel(LoggingInterceptor.Level logLevel) {
+    this.logLevel = logLevel;
+    return this;
+  }
+
+  public JobServerClientBuilder addInterceptor(Interceptor interceptor) {
+    interceptors.add(interceptor);
+    return this;
+  }
+
+  public JobServerClientBuilder addNetworkInterceptor(Interceptor interceptor) {
+    networkInterceptors.add(interceptor);
+    return this;
+  }
+
+  /**
+   * Listener of call events, e.g. {@link ClientMetrics}.
+   */
+  public JobServerClientBuilder eventListenerFactory(EventListener.Factory factory) {
+    this.eventListenerFactory = factory;
+    return this;
+  }
+
+  /**
+   * Build the OkHttp client only, e.g. to share it with other services.
+   */
+  public OkHttpClient buildHttpClient() {
+    Dispatcher dispatcher = dispatcherExecutor == null ? new Dispatcher()
+        : new Dispatcher(dispatcherExecutor);
+    dispatcher.setMaxRequests(maxRequests);
+    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis,
+            TimeUnit.MILLISECONDS))
+        .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+        .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+        .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+    if (http2PriorKnowledge) {
+      builder.protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+    }
+    interceptors.forEach(builder::addInterceptor);
+    if (logLevel != LoggingInterceptor.Level.NONE) {
+      builder.addInterceptor(new LoggingInterceptor(logLevel));
+    }
+    networkInterceptors.forEach(builder::addNetworkInterceptor);
+    if (eventListenerFactory != null) {
+      builder.eventListenerFactory(eventListenerFactory);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Build the service.
+   */
+  public JobServerService build() {
+    if (baseUrl == null) {
+      throw new IllegalStateException("baseUrl is required");
+    }
+    return new Retrofit.Builder()
+        .baseUrl(baseUrl)
+        .client(buildHttpClient())
+        .addConverterFactory(GsonConverterFactory.create(gson == null ? defaultGson() : gson))
+        .build()
+        .create(JobServerService.class);
+  }
+
+  /**
+   * Gson used when none is given to the builder, shared as it is thread-safe. Dates are read
+   * and written as ISO-8601 by {@link IsoDateAdapterFactory}, the models by the streaming
+   * adapters of {@link ModelTypeAdapterFactory}.
+   */
+  public static Gson defaultGson() {
+    return DEFAULT_GSON;
+  }
+}
@@ -1,30 +1,31 @@
 package spark.jobserver.client;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Call;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.HttpException;
+import retrofit2.Response;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
 
 /**
  * Java client implements Rest APIs provided by
@@ -47,8 +48,7 @@ public interface JobServerService {
    * @throws IOException Io exception.
    */
   default String uploadJar(String appName, String path) throws IOException {
-    RequestBody file = RequestBody.create(MediaType.parse("application/java-archive"),
-        new File(path));
+    RequestBody file = UploadBody.of(Paths.get(path), UploadBody.JAR);
     return this.uploadJar(appName, file).execute().body();
   }
 
@@ -77,15 +77,151 @@ public interface JobServerService {
   @GET("jobs")
   Call<List<JobInfo>> getJobs();
 
+  /**
+   * Latest jobs, filtered on the server side.
+   *
+   * @param status Status of jobs to return, all if null.
+   * @param limit Max number of jobs to return, server default if null.
+   * @return Jobs.
+   */
+  @GET("jobs")
+  Call<List<JobInfo>> getJobs(@Query("status") JobStatus status, @Query("limit") Integer limit);
+
+  /**
+   * Jobs as an unparsed json array, read with {@link JobInfoIterator}.
+   */
+  @Streaming
+  @GET("jobs")
+  Call<ResponseBody> getJobsBody();
+
+  @Streaming
+  @GET("jobs")
+  Call<ResponseBody> getJobsBody(@Query("status") JobStatus status,
+                                 @Query("limit") Integer limit);
+
+  /**
+   * Iterate over jobs without loading them all in memory, close the iterator to stop early.
+   *
+   * @param filter Jobs to return, others are skipped.
+   * @return Jobs iterator.
+   * @throws IOException Io exception.
+   */
+  default JobInfoIterator streamJobs(Predicate<? super JobInfo> filter) throws IOException {
+    return streamJobs(null, null, filter);
+  }
+
+  /**
+   * Iterate over jobs filtered on the server side, decoded with
+   * {@link JobServerClientBuilder#defaultGson()}.
+   *
+   * @param status Status of jobs to return, all if null.
+   * @param limit Max number of jobs to return, server default if null.
+   * @param filter Jobs to return, others are skipped.
+   * @return Jobs iterator.
+   * @throws IOException Io exception.
+   */
+  default JobInfoIterator streamJobs(JobStatus status, Integer limit,
+                                     Predicate<? super JobInfo> filter) throws IOException {
+    return streamJobs(status, limit, filter, JobServerClientBuilder.defaultGson());
+  }
+
+  /**
+   * Iterate over jobs filtered on the server side, decoded with the given Gson, e.g. the one
+   * given to {@link JobServerClientBuilder#gson(Gson)}.
+   *
+   * @param status Status of jobs to return, all if null.
+   * @param limit Max number of jobs to return, server default if null.
+   * @param filter Jobs to return, others are skipped.
+   * @param gson Gson to decode jobs.
+   * @return Jobs iterator.
+   * @throws IOException Io exception.
+   */
+  default JobInfoIterator streamJobs(JobStatus status, Integer limit,
+                                     Predicate<? super JobInfo> filter,
+                                     Gson gson) throws IOException {
+    Response<ResponseBody> response = getJobsBody(status, limit).execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    return new JobInfoIterator(response.body(), gson, filter);
+  }
+
+  /**
+   * Lazily page through the latest jobs, fetching larger pages as needed.
+   *
+   * @param status Status of jobs to return, all if null.
+   * @param firstPage Size of the first page.
+   * @return Jobs cursor.
+   */
+  default JobCursor jobCursor(JobStatus status, int firstPage) {
+    return new JobCursor(this, status, firstPage);
+  }
+
   @GET("jobs/{jobId}")
   Call<JobInfo> getJobInfo(@Path("jobId") String jobId);
 
+  /**
+   * Job info as an unparsed json object, read large results with {@link JobResultReader}.
+   */
+  @Streaming
+  @GET("jobs/{jobId}")
+  Call<ResponseBody> getJobInfoBody(@Path("jobId") String jobId);
+
+  /**
+   * Decode the result of a job one array element at a time, with bounded memory as long as the
+   * client's interceptors pass the body through, see {@link JobResultReader}.
+   *
+   * @param jobId Job id.
+   * @param consumer Called with each element of the result, or once with the result if it is
+   *     not an array.
+   * @return Number of bytes read from the response.
+   * @throws IOException Io exception.
+   */
+  default long streamResult(String jobId, Consumer<? super JsonElement> consumer)
+      throws IOException {
+    try (JobResultReader reader = JobResultReader.execute(getJobInfoBody(jobId))) {
+      return reader.forEach(consumer);
+    }
+  }
+
+  /**
+   * Write the result of a job as json to a channel, with bounded memory.
+   *
+   * @return Number of bytes written.
+   * @throws IOException Io exception.
+   */
+  default long streamResult(String jobId, WritableByteChannel channel) throws IOException {
+    try (JobResultReader reader = JobResultReader.execute(getJobInfoBody(jobId))) {
+      return reader.transferTo(channel);
+    }
+  }
+
+  /**
+   * Write the result of a job as json to a file, with bounded memory.
+   *
+   * @return Number of bytes written.
+   * @throws IOException Io exception.
+   */
+  default long streamResult(String jobId, java.nio.file.Path path) throws IOException {
+    try (JobResultReader reader = JobResultReader.execute(getJobInfoBody(jobId))) {
+      return reader.transferTo(path);
+    }
+  }
+
   @GET("jobs/{jobId}/config")
   Call<ResponseBody> getJobConfig(@Path("jobId") String jobId);
 
   @POST("jobs")
   Call<JobInfo> startJob(@QueryMap Map<String, Object> params);
 
+  /**
+   * Start a job, unparsed, e.g. with <code>sync=true</code> to read its large result with
+   * {@link JobResultReader}.
+   */
+  @Streaming
+  @POST("jobs")
+  Call<ResponseBody> startJobBody(@QueryMap Map<String, Object> params);
+
   @DELETE("jobs/{jobId}")
   Call<String> killJob(@Path("jobId") String jobId);
 
@@ -100,6 +236,18 @@ public interface JobServerService {
   @POST("data/{prefix}")
   Call<DataResult> uploadData(@Path("prefix") String prefix, @Body RequestBody file);
 
+  /**
+   * Upload a data file.
+   * @param prefix File name prefix.
+   * @param path Data file path.
+   * @return Result.
+   * @throws IOException Io exception.
+   */
+  default DataResult uploadData(String prefix, String path) throws IOException {
+    RequestBody file = UploadBody.of(Paths.get(path), UploadBody.OCTET_STREAM);
+    return this.uploadData(prefix, file).execute().body();
+  }
+
   @DELETE("data/{filename}")
   Call<String> deleteData(@Path("filename") String filename);
 
@@ -112,19 +260,10 @@ public interface JobServerService {
   Call<String> resetData();
 
   /**
-   * create an instance.
+   * create an instance with default settings, see {@link JobServerClientBuilder} to tune the
+   * connection pool, timeouts or logging.
    */
   static JobServerService newInstance(String url) {
-    Gson gson = new GsonBuilder().setLenient().create();
-    HttpLoggingInterceptor logger = new HttpLoggingInterceptor(x -> System.out.println("- " + x));
-    logger.setLevel(HttpLoggingInterceptor.Level.BODY);
-    OkHttpClient httpClient = new OkHttpClient.Builder().addInterceptor(logger)
-        .readTimeout(3, TimeUnit.MINUTES).writeTimeout(5, TimeUnit.MINUTES)
-        .connectTimeout(1, TimeUnit.MINUTES).build();
-    return new Retrofit.Builder()
-        .baseUrl(url)
-        .client(httpClient)
-        .addConverterFactory(GsonConverterFactory.create(gson)).build()
-        .create(JobServerService.class);
+    return new JobServerClientBuilder().baseUrl(url).build();
   }
 }
@@ -6,4 +6,12 @@ public enum JobStatus {
   OK,
   STARTED,
   RUNNING,
+  ;
+
+  /**
+   * Whether a job in this status has ended and will not change anymore.
+   */
+  public boolean isTerminal() {
+    return this == ERROR || this == FINISHED;
+  }
 }
@@ -0,0 +1,20 @@
+package spark.jobserver.client;
+
+import lombok.Data;
+
+/**
+ * A job status transition, published by {@link JobStatusPublisher}.
+ */
+@Data
+public class JobStatusEvent {
+  private final String jobId;
+  /**
+   * Status before the transition, null when the job is seen for the first time.
+   */
+  private final JobStatus previous;
+  private final JobStatus status;
+  /**
+   * Job info the transition was seen in, without the job result when read from a listing.
+   */
+  private final JobInfo info;
+}
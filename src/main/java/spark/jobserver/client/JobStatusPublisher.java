@@ -0,0 +1,290 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes the status transitions of a set of jobs, or of all jobs of a context, seen by the
+ * sweeps of a {@link JobTracker}.
+ *
+ * <p>Each subscriber keeps at most one pending event per job: while it has no demand, a newer
+ * transition of a job replaces the pending one, so a slow subscriber gets the latest state and
+ * never an unbounded backlog. A new subscriber first gets the current status of the jobs seen
+ * so far, less the ended jobs of a context. Events are delivered on the given executor, the
+ * common pool by default.
+ *
+ * <p>A publisher of a set of jobs completes once they all ended, one of a context completes
+ * when closed.
+ */
+public class JobStatusPublisher implements Publisher<JobStatusEvent>, Closeable {
+  private static final Logger LOG = Logger.getLogger(JobStatusPublisher.class);
+
+  private final JobTracker tracker;
+  private final boolean ofContext;
+  private final Executor executor;
+  private final Map<String, JobStatusEvent> states = new LinkedHashMap<>();
+  private final List<StatusSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private ScheduledExecutorService scheduler;
+  private boolean completed;
+
+  private JobStatusPublisher(JobTracker tracker, boolean ofContext, Executor executor) {
+    this.tracker = tracker;
+    this.ofContext = ofContext;
+    this.executor = executor;
+    tracker.addListener(this::publish);
+  }
+
+  /**
+   * Publisher of the transitions of the given jobs, until they all ended.
+   */
+  public static JobStatusPublisher ofJobs(JobServerService service, Collection<String> jobIds) {
+    return ofJobs(service, jobIds, ForkJoinPool.commonPool());
+  }
+
+  public static JobStatusPublisher ofJobs(JobServerService service, Collection<String> jobIds,
+                                          Executor executor) {
+    JobTracker tracker = new JobTracker(service);
+    jobIds.forEach(tracker::track);
+    return new JobStatusPublisher(tracker, false, executor);
+  }
+
+  /**
+   * Publisher of the transitions of all jobs of a context, until closed.
+   */
+  public static JobStatusPublisher ofContext(JobServerService service, String context) {
+    return ofContext(service, context, ForkJoinPool.commonPool());
+  }
+
+  public static JobStatusPublisher ofContext(JobServerService service, String context,
+                                             Executor executor) {
+    return new JobStatusPublisher(new JobTracker(service).trackContext(context), true, executor);
+  }
+
+  /**
+   * Sweep periodically on a background thread, or call {@link #refresh()} manually.
+   */
+  public synchronized JobStatusPublisher start(long interval, TimeUnit unit) {
+    if (scheduler == null && !completed) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jobserver-status-publisher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, interval, unit);
+    }
+    return this;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super JobStatusEvent> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    StatusSubscription subscription = new StatusSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    synchronized (this) {
+      states.values().forEach(subscription::offer);
+      if (completed) {
+        subscription.complete();
+      } else {
+        subscriptions.add(subscription);
+      }
+    }
+    subscription.signal();
+  }
+
+  /**
+   * Number of active subscribers.
+   */
+  public int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Refresh the status of the jobs and publish their transitions.
+   *
+   * @throws IOException If listing the jobs fails.
+   */
+  public synchronized void refresh() throws IOException {
+    if (completed) {
+      return;
+    }
+    tracker.refresh();
+    if (!ofContext && tracker.size() == 0) {
+      complete();
+    }
+    for (StatusSubscription subscription : subscriptions) {
+      subscription.signal();
+    }
+  }
+
+  /**
+   * Called by the tracker during {@link #refresh()}.
+   */
+  private void publish(JobInfo info, JobStatus previous) {
+    JobStatusEvent event = new JobStatusEvent(info.getJobId(), previous, info.getStatus(), info);
+    if (ofContext && info.getStatus() != null && info.getStatus().isTerminal()) {
+      // bounds the states of a long-lived context
+      states.remove(info.getJobId());
+    } else {
+      states.put(info.getJobId(), event);
+    }
+    for (StatusSubscription subscription : subscriptions) {
+      subscription.offer(event);
+    }
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (Exception e) {
+      LOG.warn("Failed to refresh job statuses", e);
+    }
+  }
+
+  private void complete() {
+    completed = true;
+    for (StatusSubscription subscription : subscriptions) {
+      subscription.complete();
+      subscription.signal();
+    }
+    subscriptions.clear();
+    if (scheduler != null) {
+      scheduler.shutdown();
+      scheduler = null;
+    }
+    tracker.close();
+  }
+
+  /**
+   * Stop sweeping and complete the subscribers once they got their pending events.
+   */
+  @Override
+  public synchronized void close() {
+    if (!completed) {
+      complete();
+    }
+  }
+
+  private final class StatusSubscription implements Subscription, Runnable {
+    private final Subscriber<? super JobStatusEvent> subscriber;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final LinkedHashMap<String, JobStatusEvent> pending = new LinkedHashMap<>();
+    private long demand;
+    private boolean completed;
+    private Throwable error;
+    private volatile boolean done;
+
+    StatusSubscription(Subscriber<? super JobStatusEvent> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    /**
+     * Queue an event, replacing a pending one of the same job.
+     */
+    synchronized void offer(JobStatusEvent event) {
+      JobStatusEvent old = pending.remove(event.getJobId());
+      if (old != null) {
+        event = new JobStatusEvent(event.getJobId(), old.getPrevious(), event.getStatus(),
+            event.getInfo());
+      }
+      pending.put(event.getJobId(), event);
+    }
+
+    synchronized void complete() {
+      completed = true;
+    }
+
+    void signal() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (this) {
+        if (n <= 0) {
+          error = new IllegalArgumentException("Non-positive request: " + n);
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+      }
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+      subscriptions.remove(this);
+      synchronized (this) {
+        pending.clear();
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      while (!done) {
+        JobStatusEvent event = null;
+        Throwable failure;
+        boolean finished;
+        synchronized (this) {
+          failure = error;
+          if (failure == null && demand > 0 && !pending.isEmpty()) {
+            Iterator<JobStatusEvent> it = pending.values().iterator();
+            event = it.next();
+            it.remove();
+            if (demand != Long.MAX_VALUE) {
+              demand--;
+            }
+          }
+          finished = completed && pending.isEmpty();
+        }
+
+        if (failure != null) {
+          cancel();
+          subscriber.onError(failure);
+          return;
+        }
+        if (event == null) {
+          if (finished) {
+            done = true;
+            subscriber.onComplete();
+          }
+          return;
+        }
+        try {
+          subscriber.onNext(event);
+        } catch (RuntimeException e) {
+          LOG.warn("Subscriber failed, cancelling its subscription", e);
+          cancel();
+        }
+      }
+    }
+  }
+}
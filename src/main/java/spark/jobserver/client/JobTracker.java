@@ -0,0 +1,296 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Tracks the status of many jobs with one <code>GET /jobs</code> sweep per tick, instead of one
+ * <code>GET /jobs/&lt;jobId&gt;</code> poll per job.
+ *
+ * <p>Each sweep is diffed against the previous one: listeners are told about every status
+ * change, and the future of a job completes once it is {@link JobStatus#isTerminal() terminal}.
+ * The listing asks for twice as many jobs as the depth at which the previous sweep found them,
+ * at least twice as many as tracked, and doubles while tracked jobs are missing from a full
+ * listing, so a steady state costs one request per sweep. Only jobs missing from the whole
+ * history, e.g. pushed out of it by the server, are fetched one by one. Note the listing carries no job result, call
+ * {@link JobServerService#getJobInfo(String)} for it.
+ *
+ * <p>Jobs of a {@link #trackContext(String) tracked context} are tracked as they show up in the
+ * listing, which then grows back to the newest job of the previous sweep so that a burst of
+ * new jobs is not missed. Its jobs already running when it is tracked are found with one
+ * listing of the running jobs.
+ */
+public class JobTracker implements Closeable {
+  private static final Logger LOG = Logger.getLogger(JobTracker.class);
+  /**
+   * Jobs listed by the server when no limit is given.
+   */
+  private static final int DEFAULT_LISTING = 50;
+  private static final int MAX_LISTING = 1 << 16;
+  /**
+   * Ended jobs of tracked contexts remembered, so that they are not tracked again.
+   */
+  private static final int MAX_ENDED = 10_000;
+
+  /**
+   * Notified on the sweep thread when a tracked job changes status.
+   */
+  public interface Listener {
+    /**
+     * @param info Latest job info.
+     * @param previous Previous status, null for the first time the job is seen.
+     */
+    void onStatusChange(JobInfo info, JobStatus previous);
+  }
+
+  private final JobServerService service;
+  private final Map<String, CompletableFuture<JobInfo>> tracked = new ConcurrentHashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final Set<String> contexts = ConcurrentHashMap.newKeySet();
+  private final Set<String> newContexts = ConcurrentHashMap.newKeySet();
+  private final Set<String> ended = Collections.newSetFromMap(
+      new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > MAX_ENDED;
+        }
+      });
+  private Map<String, JobStatus> snapshot = Collections.emptyMap();
+  private String lastNewest;
+  /**
+   * Depth of the deepest job needed by the previous sweep.
+   */
+  private int lastDepth;
+  private ScheduledExecutorService scheduler;
+
+  public JobTracker(JobServerService service) {
+    this.service = service;
+  }
+
+  /**
+   * Sweep periodically on a background thread, or call {@link #refresh()} manually.
+   */
+  public synchronized JobTracker start(long interval, TimeUnit unit) {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jobserver-job-tracker");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, interval, unit);
+    }
+    return this;
+  }
+
+  public JobTracker addListener(Listener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * Track a job.
+   *
+   * @param jobId Job id.
+   * @return Future completed with the job info once the job is finished or failed. Cancel it
+   *     to stop tracking the job.
+   */
+  public CompletableFuture<JobInfo> track(String jobId) {
+    return tracked.computeIfAbsent(jobId, id -> new CompletableFuture<>());
+  }
+
+  /**
+   * Track the jobs of a context, until the tracker is closed.
+   */
+  public JobTracker trackContext(String context) {
+    if (contexts.add(context)) {
+      newContexts.add(context);
+    }
+    return this;
+  }
+
+  /**
+   * Number of jobs still tracked.
+   */
+  public int size() {
+    return tracked.size();
+  }
+
+  /**
+   * Status of every tracked job seen by the last sweep.
+   */
+  public synchronized Map<String, JobStatus> snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Refresh the status of all tracked jobs.
+   *
+   * @throws IOException If listing the jobs fails.
+   */
+  public synchronized void refresh() throws IOException {
+    tracked.values().removeIf(CompletableFuture::isDone);
+    if (tracked.isEmpty() && contexts.isEmpty()) {
+      snapshot = Collections.emptyMap();
+      lastDepth = 0;
+      return;
+    }
+
+    Map<String, JobInfo> listed = list();
+    if (!newContexts.isEmpty()) {
+      listRunning(listed);
+    }
+    Map<String, JobStatus> next = new HashMap<>(tracked.size() * 4 / 3 + 1);
+    for (Map.Entry<String, CompletableFuture<JobInfo>> entry : tracked.entrySet()) {
+      String jobId = entry.getKey();
+      JobInfo info = listed.get(jobId);
+      if (info == null) {
+        info = fetch(jobId, entry.getValue());
+        if (info == null) {
+          continue;
+        }
+      }
+      JobStatus previous = snapshot.get(jobId);
+      next.put(jobId, info.getStatus());
+      if (info.getStatus() != previous) {
+        for (Listener listener : listeners) {
+          listener.onStatusChange(info, previous);
+        }
+      }
+      if (info.getStatus() != null && info.getStatus().isTerminal()) {
+        entry.getValue().complete(info);
+        if (info.getContext() != null && contexts.contains(info.getContext())) {
+          ended.add(jobId);
+        }
+      }
+    }
+    tracked.values().removeIf(CompletableFuture::isDone);
+    snapshot = Collections.unmodifiableMap(next);
+  }
+
+  /**
+   * List the tracked jobs, growing the listing until it covers them or the server's history.
+   * With tracked contexts, it also grows until it reaches the newest job of the previous sweep.
+   */
+  private Map<String, JobInfo> list() throws IOException {
+    Map<String, JobInfo> listed = new HashMap<>();
+    int limit = Math.max(listingLimit(tracked.size()), listingLimit(lastDepth));
+    while (true) {
+      List<JobInfo> jobs = jobs(null, limit);
+      boolean reachedLast = lastNewest == null;
+      int depth = 0;
+      for (int i = 0; i < jobs.size(); i++) {
+        JobInfo info = jobs.get(i);
+        if (info.getJobId() == null) {
+          continue;
+        }
+        if (info.getJobId().equals(lastNewest)) {
+          reachedLast = true;
+          depth = i + 1;
+        }
+        if (tracked.containsKey(info.getJobId()) || adopt(info)) {
+          listed.put(info.getJobId(), info);
+          depth = i + 1;
+        }
+      }
+      boolean complete = listed.size() >= tracked.size() && (contexts.isEmpty() || reachedLast);
+      if (complete || jobs.size() < limit || limit >= MAX_LISTING) {
+        lastNewest = contexts.isEmpty() || jobs.isEmpty() ? null : jobs.get(0).getJobId();
+        lastDepth = depth;
+        return listed;
+      }
+      limit = Math.min(MAX_LISTING, limit * 2);
+    }
+  }
+
+  /**
+   * Add the running jobs of newly tracked contexts.
+   */
+  private void listRunning(Map<String, JobInfo> listed) throws IOException {
+    for (JobInfo info : jobs(JobStatus.RUNNING, MAX_LISTING)) {
+      if (info.getJobId() != null && newContexts.contains(info.getContext())
+          && !listed.containsKey(info.getJobId()) && adopt(info)) {
+        listed.put(info.getJobId(), info);
+      }
+    }
+    newContexts.clear();
+  }
+
+  /**
+   * Track a listed job of a tracked context.
+   *
+   * @return Whether the job is tracked.
+   */
+  private boolean adopt(JobInfo info) {
+    if (info.getContext() == null || !contexts.contains(info.getContext())
+        || ended.contains(info.getJobId())) {
+      return false;
+    }
+    track(info.getJobId());
+    return true;
+  }
+
+  private List<JobInfo> jobs(JobStatus status, int limit) throws IOException {
+    Response<List<JobInfo>> response = service.getJobs(status, limit).execute();
+    if (!response.isSuccessful()) {
+      throw new HttpException(response);
+    }
+    return response.body();
+  }
+
+  /**
+   * Size of a listing covering the given number of jobs and as many newer ones.
+   */
+  static int listingLimit(int jobs) {
+    return (int) Math.min(MAX_LISTING, Math.max(DEFAULT_LISTING, jobs * 2L));
+  }
+
+  private JobInfo fetch(String jobId, CompletableFuture<JobInfo> future) {
+    try {
+      Response<JobInfo> response = service.getJobInfo(jobId).execute();
+      if (response.isSuccessful()) {
+        return response.body();
+      }
+      if (response.code() == 404) {
+        future.completeExceptionally(new HttpException(response));
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to get job " + jobId, e);
+    }
+    return null;
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (Exception e) {
+      LOG.warn("Failed to refresh job statuses", e);
+    }
+  }
+
+  /**
+   * Stop the background sweep, pending futures are left incomplete.
+   */
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package spark.jobserver.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets of microseconds.
+ *
+ * <p>Each power of two is split in 8 buckets, so a percentile is reported within 12.5% of the
+ * recorded value. Recording is a couple of atomic increments, cheap enough to leave on.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKETS = 8;
+  private static final int SUB_BITS = 3;
+  private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+
+  public void record(long duration, TimeUnit unit) {
+    long micros = Math.max(0, unit.toMicros(duration));
+    buckets.incrementAndGet(index(micros));
+    count.increment();
+    totalMicros.add(micros);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Mean in microseconds.
+   */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) totalMicros.sum() / n;
+  }
+
+  /**
+   * Value in microseconds below which the given fraction (0 to 1) of values fall, e.g. 0.99.
+   */
+  public long percentile(double fraction) {
+    long[] snapshot = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(fraction * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  static int index(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return Math.min(BUCKETS - 1, (exp - SUB_BITS + 1) * SUB_BUCKETS + sub);
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+    int sub = index % SUB_BUCKETS;
+    long lower = (long) (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+    return lower + (1L << (exp - SUB_BITS)) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%.0fus p50=%dus p99=%dus p999=%dus", getCount(),
+        getMean(), percentile(0.5), percentile(0.99), percentile(0.999));
+  }
+}
@@ -0,0 +1,143 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.log4j.Logger;
+
+/**
+ * Logs requests and responses to log4j at debug level without buffering bodies.
+ *
+ * <p>Request bodies are never read, only their type and length are logged, so jar and data
+ * uploads stream straight to the socket. At {@link Level#BODY} a sampled, truncated prefix of
+ * JSON response bodies is peeked; other responses are never read. Messages are handed to a
+ * single background thread, and dropped when it falls behind.
+ */
+public class LoggingInterceptor implements Interceptor {
+  private static final Logger LOG = Logger.getLogger(LoggingInterceptor.class);
+  private static final ExecutorService WRITER = new ThreadPoolExecutor(1, 1, 0L,
+      TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(4096), r -> {
+        Thread thread = new Thread(r, "jobserver-client-logger");
+        thread.setDaemon(true);
+        return thread;
+      }, new ThreadPoolExecutor.DiscardPolicy());
+
+  public enum Level {
+    /** No logs. */
+    NONE,
+    /** Request and response lines, sizes and timings. */
+    BASIC,
+    /** As BASIC, plus headers. */
+    HEADERS,
+    /** As HEADERS, plus a sampled prefix of JSON response bodies. */
+    BODY,
+  }
+
+  private final Level level;
+  private long maxBodyBytes = 1024;
+  private double sampleRate = 1.0;
+
+  public LoggingInterceptor(Level level) {
+    this.level = level;
+  }
+
+  /**
+   * Max bytes of a JSON response body to log, 1024 by default.
+   */
+  public LoggingInterceptor maxBodyBytes(long maxBodyBytes) {
+    this.maxBodyBytes = maxBodyBytes;
+    return this;
+  }
+
+  /**
+   * Fraction (0 to 1) of JSON responses whose body prefix is logged, 1 by default.
+   */
+  public LoggingInterceptor sampleRate(double sampleRate) {
+    this.sampleRate = sampleRate;
+    return this;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (level == Level.NONE || !LOG.isDebugEnabled()) {
+      return chain.proceed(request);
+    }
+
+    StringBuilder sb = new StringBuilder("--> ").append(request.method()).append(' ')
+        .append(request.url());
+    RequestBody body = request.body();
+    if (body != null) {
+      sb.append(" (").append(body.contentType()).append(", ")
+          .append(size(body.contentLength())).append(')');
+    }
+    if (level.compareTo(Level.HEADERS) >= 0) {
+      appendHeaders(sb, request.headers());
+    }
+    log(sb.toString());
+
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException e) {
+      log("<-- HTTP FAILED: " + request.url() + ": " + e);
+      throw e;
+    }
+    long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    ResponseBody responseBody = response.body();
+    sb = new StringBuilder("<-- ").append(response.code()).append(' ')
+        .append(response.message()).append(' ').append(request.url()).append(" (")
+        .append(tookMs).append("ms");
+    if (responseBody != null) {
+      sb.append(", ").append(size(responseBody.contentLength()));
+    }
+    sb.append(')');
+    if (level.compareTo(Level.HEADERS) >= 0) {
+      appendHeaders(sb, response.headers());
+    }
+    if (level == Level.BODY && responseBody != null && isJson(responseBody.contentType())
+        && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+      ResponseBody prefix = response.peekBody(maxBodyBytes);
+      Charset charset = responseBody.contentType().charset(StandardCharsets.UTF_8);
+      sb.append("\n").append(new String(prefix.bytes(), charset));
+      if (responseBody.contentLength() < 0 || responseBody.contentLength() > maxBodyBytes) {
+        sb.append("...");
+      }
+    }
+    log(sb.toString());
+    return response;
+  }
+
+  private static boolean isJson(MediaType type) {
+    return type != null && type.subtype().toLowerCase().contains("json");
+  }
+
+  private static String size(long contentLength) {
+    return contentLength < 0 ? "unknown-length body" : contentLength + "-byte body";
+  }
+
+  private static void appendHeaders(StringBuilder sb, Headers headers) {
+    for (int i = 0; i < headers.size(); i++) {
+      sb.append("\n").append(headers.name(i)).append(": ").append(headers.value(i));
+    }
+  }
+
+  private static void log(String message) {
+    WRITER.execute(() -> LOG.debug(message));
+  }
+}
@@ -8,10 +8,6 @@
 
 package spark.jobserver.client;
 
-import com.google.gson.annotations.SerializedName;
-
-import java.lang.reflect.Field;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -19,29 +15,11 @@ import java.util.Map;
  */
 public interface Mapping {
   /**
-   * Convert bean to Map.
+   * Convert bean to Map. Fields are resolved once per class, null values are skipped.
    *
    * @return Map of fields.
    */
   default Map<String, Object> toMap() {
-    Map<String, Object> result = new HashMap<>();
-    for (Field field : this.getClass().getDeclaredFields()) {
-      try {
-        field.setAccessible(true);
-        Object value = field.get(this);
-        if (value == null) {
-          continue;
-        }
-        //if ((value instanceof Number) && ((Number) value).doubleValue() < 0) continue;
-        if (field.isAnnotationPresent(SerializedName.class)) {
-          result.put((field.getAnnotation(SerializedName.class)).value(), value);
-        } else {
-          result.put(field.getName(), value);
-        }
-      } catch (IllegalAccessException e) {
-        System.out.println(e.getMessage() + ": " + field.getName());
-      }
-    }
-    return result;
+    return FieldAccessors.CACHE.get(this.getClass()).toMap(this);
   }
 }
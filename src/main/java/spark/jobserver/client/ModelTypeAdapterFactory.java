@@ -0,0 +1,309 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Streaming adapters of the response models, used instead of Gson's reflective adapters to
+ * save the reflection on every response and the adapter creation on the first one.
+ *
+ * <p>They read and write the same json as the reflective adapters: unknown names are skipped,
+ * unknown job statuses read as null, and dates go through the {@link Date} adapter of the Gson.
+ * The result of a job is kept as raw json, see {@link JobInfo#result(Class)}.
+ * A new field of a model must be added here too.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+    Class<? super T> raw = type.getRawType();
+    TypeAdapter<?> adapter;
+    if (raw == JobInfo.class) {
+      adapter = new JobInfoAdapter(gson.getAdapter(Date.class));
+    } else if (raw == JobInfo.Result.class) {
+      adapter = new JobResultAdapter();
+    } else if (raw == Binary.class) {
+      adapter = new BinaryAdapter(gson.getAdapter(Date.class));
+    } else if (raw == Result.class) {
+      adapter = new ResultAdapter();
+    } else if (raw == DataResult.class) {
+      adapter = new DataResultAdapter(gson.getAdapter(DataResult.Result.class));
+    } else if (raw == DataResult.Result.class) {
+      adapter = new DataFileAdapter();
+    } else {
+      return null;
+    }
+    return (TypeAdapter<T>) adapter.nullSafe();
+  }
+
+  /**
+   * Read a string the way Gson's string adapter does, numbers and booleans included.
+   */
+  private static String readString(JsonReader in) throws IOException {
+    JsonToken token = in.peek();
+    if (token == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    if (token == JsonToken.BOOLEAN) {
+      return Boolean.toString(in.nextBoolean());
+    }
+    return in.nextString();
+  }
+
+  private static JobStatus readStatus(JsonReader in) throws IOException {
+    String name = readString(in);
+    if (name == null) {
+      return null;
+    }
+    try {
+      return JobStatus.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static final class JobInfoAdapter extends TypeAdapter<JobInfo> {
+    private final TypeAdapter<Date> dates;
+    private final RawJsonAdapter results = new RawJsonAdapter();
+
+    JobInfoAdapter(TypeAdapter<Date> dates) {
+      this.dates = dates;
+    }
+
+    @Override
+    public void write(JsonWriter out, JobInfo value) throws IOException {
+      out.beginObject();
+      out.name("jobId").value(value.getJobId());
+      out.name("status").value(value.getStatus() == null ? null : value.getStatus().name());
+      out.name("context").value(value.getContext());
+      out.name("classPath").value(value.getClassPath());
+      out.name("duration").value(value.getDuration());
+      out.name("startTime");
+      dates.write(out, value.getStartTime());
+      out.name("result");
+      results.write(out, value.getResultJson());
+      out.endObject();
+    }
+
+    @Override
+    public JobInfo read(JsonReader in) throws IOException {
+      JobInfo info = new JobInfo();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "jobId":
+            info.setJobId(readString(in));
+            break;
+          case "status":
+            info.setStatus(readStatus(in));
+            break;
+          case "context":
+            info.setContext(readString(in));
+            break;
+          case "classPath":
+            info.setClassPath(readString(in));
+            break;
+          case "duration":
+            info.setDuration(readString(in));
+            break;
+          case "startTime":
+            info.setStartTime(dates.read(in));
+            break;
+          case "result":
+            info.setResultJson(results.read(in));
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return info;
+    }
+  }
+
+  private static final class JobResultAdapter extends TypeAdapter<JobInfo.Result> {
+    @Override
+    public void write(JsonWriter out, JobInfo.Result value) throws IOException {
+      out.beginObject();
+      out.name("message").value(value.getMessage());
+      out.name("errorClass").value(value.getErrorClass());
+      out.name("stack");
+      if (value.getStack() == null) {
+        out.nullValue();
+      } else {
+        out.beginArray();
+        for (String line : value.getStack()) {
+          out.value(line);
+        }
+        out.endArray();
+      }
+      out.endObject();
+    }
+
+    @Override
+    public JobInfo.Result read(JsonReader in) throws IOException {
+      JobInfo.Result result = new JobInfo.Result();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "message":
+            result.setMessage(readString(in));
+            break;
+          case "errorClass":
+            result.setErrorClass(readString(in));
+            break;
+          case "stack":
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+              break;
+            }
+            List<String> stack = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+              stack.add(readString(in));
+            }
+            in.endArray();
+            result.setStack(stack.toArray(new String[0]));
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return result;
+    }
+  }
+
+  private static final class BinaryAdapter extends TypeAdapter<Binary> {
+    private final TypeAdapter<Date> dates;
+
+    BinaryAdapter(TypeAdapter<Date> dates) {
+      this.dates = dates;
+    }
+
+    @Override
+    public void write(JsonWriter out, Binary value) throws IOException {
+      out.beginObject();
+      out.name("binary-type").value(value.getBinaryType());
+      out.name("upload-time");
+      dates.write(out, value.getUploadTime());
+      out.endObject();
+    }
+
+    @Override
+    public Binary read(JsonReader in) throws IOException {
+      Binary binary = new Binary();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "binary-type":
+            binary.setBinaryType(readString(in));
+            break;
+          case "upload-time":
+            binary.setUploadTime(dates.read(in));
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return binary;
+    }
+  }
+
+  private static final class ResultAdapter extends TypeAdapter<Result> {
+    @Override
+    public void write(JsonWriter out, Result value) throws IOException {
+      out.beginObject();
+      out.name("status").value(value.getStatus());
+      out.name("result").value(value.getResult());
+      out.endObject();
+    }
+
+    @Override
+    public Result read(JsonReader in) throws IOException {
+      Result result = new Result();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "status":
+            result.setStatus(readString(in));
+            break;
+          case "result":
+            result.setResult(readString(in));
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return result;
+    }
+  }
+
+  private static final class DataResultAdapter extends TypeAdapter<DataResult> {
+    private final TypeAdapter<DataResult.Result> results;
+
+    DataResultAdapter(TypeAdapter<DataResult.Result> results) {
+      this.results = results;
+    }
+
+    @Override
+    public void write(JsonWriter out, DataResult value) throws IOException {
+      out.beginObject();
+      out.name("result");
+      results.write(out, value.getResult());
+      out.endObject();
+    }
+
+    @Override
+    public DataResult read(JsonReader in) throws IOException {
+      DataResult data = new DataResult();
+      in.beginObject();
+      while (in.hasNext()) {
+        if ("result".equals(in.nextName())) {
+          data.setResult(results.read(in));
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return data;
+    }
+  }
+
+  private static final class DataFileAdapter extends TypeAdapter<DataResult.Result> {
+    @Override
+    public void write(JsonWriter out, DataResult.Result value) throws IOException {
+      out.beginObject();
+      out.name("filename").value(value.getFilename());
+      out.endObject();
+    }
+
+    @Override
+    public DataResult.Result read(JsonReader in) throws IOException {
+      DataResult.Result result = new DataResult.Result();
+      in.beginObject();
+      while (in.hasNext()) {
+        if ("filename".equals(in.nextName())) {
+          result.setFilename(readString(in));
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return result;
+    }
+  }
+}
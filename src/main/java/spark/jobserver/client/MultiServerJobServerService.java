@@ -0,0 +1,781 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.apache.log4j.Logger;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * A {@link JobServerService} spreading work over several job servers.
+ *
+ * <p>{@link #startJob(Map)} and {@link #createContext(String, Map)} go to the less busy of two
+ * random healthy servers (power of two choices on outstanding requests), unless a job names a
+ * context whose server is known. The server of each job and context is remembered, so calls
+ * about it, such as {@link #getJobInfo(String)} or {@link #killJob(String)}, go to that server;
+ * unknown ids are looked up on each server in turn. Binaries and data are uploaded to and
+ * deleted from every server, and listings are merged. When only some servers fail such a
+ * write, it fails with a {@link BroadcastException} naming them.
+ *
+ * <p>A server is ejected when a call to it fails with an I/O error or a periodic health check
+ * (<code>GET /contexts</code>) fails, and comes back once a health check succeeds. When no
+ * server is healthy, all are tried. A picked call which fails to connect, so before anything
+ * was sent, is retried on another server.
+ */
+public class MultiServerJobServerService implements JobServerService, Closeable {
+  private static final Logger LOG = Logger.getLogger(MultiServerJobServerService.class);
+  private static final int MAX_JOB_OWNERS = 100_000;
+
+  private final List<Server> servers;
+  private final Map<String, Server> contextOwners = new ConcurrentHashMap<>();
+  private final Map<String, Server> jobOwners = Collections.synchronizedMap(
+      new LinkedHashMap<String, Server>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Server> eldest) {
+          return size() > MAX_JOB_OWNERS;
+        }
+      });
+  private final ScheduledExecutorService healthChecker;
+  private final ExecutorService executor;
+
+  /**
+   * Thrown when a write to every server failed on some of them only, e.g. an upload.
+   */
+  public static class BroadcastException extends IOException {
+    private final List<String> succeeded;
+    private final Map<String, String> failed;
+
+    BroadcastException(List<String> succeeded, Map<String, String> failed) {
+      super("Failed on " + failed.size() + " of " + (succeeded.size() + failed.size())
+          + " job servers: " + failed);
+      this.succeeded = Collections.unmodifiableList(succeeded);
+      this.failed = Collections.unmodifiableMap(failed);
+    }
+
+    /**
+     * Urls of the servers which succeeded.
+     */
+    public List<String> getSucceeded() {
+      return succeeded;
+    }
+
+    /**
+     * Error by url of the servers which failed.
+     */
+    public Map<String, String> getFailed() {
+      return failed;
+    }
+  }
+
+  private static final class Server {
+    final String url;
+    final JobServerService service;
+    final AtomicInteger outstanding = new AtomicInteger();
+    volatile boolean healthy = true;
+
+    Server(String url, JobServerService service) {
+      this.url = url;
+      this.service = service;
+    }
+  }
+
+  /**
+   * Servers built with default settings, health checked every 10 seconds.
+   */
+  public MultiServerJobServerService(List<String> urls) {
+    this(build(urls), 10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param services Services by job server url.
+   * @param healthCheckInterval Interval of health checks.
+   * @param unit Unit of healthCheckInterval.
+   */
+  public MultiServerJobServerService(Map<String, JobServerService> services,
+                                     long healthCheckInterval, TimeUnit unit) {
+    if (services.isEmpty()) {
+      throw new IllegalArgumentException("No job server");
+    }
+    List<Server> list = new ArrayList<>();
+    services.forEach((url, service) -> list.add(new Server(url, service)));
+    this.servers = Collections.unmodifiableList(list);
+    this.executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "jobserver-multi-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "jobserver-health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval,
+        healthCheckInterval, unit);
+  }
+
+  private static Map<String, JobServerService> build(List<String> urls) {
+    Map<String, JobServerService> services = new LinkedHashMap<>();
+    for (String url : urls) {
+      services.put(url, new JobServerClientBuilder().baseUrl(url).build());
+    }
+    return services;
+  }
+
+  /**
+   * Urls of the servers currently considered healthy.
+   */
+  public List<String> healthyServers() {
+    List<String> urls = new ArrayList<>();
+    for (Server server : servers) {
+      if (server.healthy) {
+        urls.add(server.url);
+      }
+    }
+    return urls;
+  }
+
+  private void checkHealth() {
+    for (Server server : servers) {
+      boolean healthy;
+      try {
+        healthy = server.service.getContexts().execute().isSuccessful();
+      } catch (IOException | RuntimeException e) {
+        healthy = false;
+      }
+      if (server.healthy != healthy) {
+        LOG.info("Job server " + server.url + (healthy ? " is back" : " is ejected"));
+      }
+      server.healthy = healthy;
+    }
+  }
+
+  private List<Server> candidates() {
+    List<Server> healthy = new ArrayList<>(servers.size());
+    for (Server server : servers) {
+      if (server.healthy) {
+        healthy.add(server);
+      }
+    }
+    return healthy.isEmpty() ? servers : healthy;
+  }
+
+  private Server pick() {
+    return pick(Collections.emptySet());
+  }
+
+  /**
+   * @return A server other than the excluded ones, null if none.
+   */
+  private Server pick(Set<Server> excluded) {
+    List<Server> candidates = new ArrayList<>(candidates());
+    candidates.removeAll(excluded);
+    if (candidates.isEmpty()) {
+      candidates = new ArrayList<>(servers);
+      candidates.removeAll(excluded);
+    }
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Server a = candidates.get(random.nextInt(candidates.size()));
+    Server b = candidates.get(random.nextInt(candidates.size()));
+    return a.outstanding.get() <= b.outstanding.get() ? a : b;
+  }
+
+  private Server owner(Map<String, Server> owners, String id) {
+    Server server = owners.get(id);
+    return server != null && server.healthy ? server : null;
+  }
+
+  /**
+   * Call on the owner of an id, or on each server in turn until one does not answer 404.
+   */
+  private <T> Call<T> byOwner(Map<String, Server> owners, String id,
+                              Function<JobServerService, Call<T>> factory) {
+    return byOwner(owners, id, factory, (server, response) -> {
+      if (response.isSuccessful()) {
+        owners.put(id, server);
+      }
+    });
+  }
+
+  /**
+   * @param onResponse Called with the server which answered, other than with a 404 if any.
+   */
+  private <T> Call<T> byOwner(Map<String, Server> owners, String id,
+                              Function<JobServerService, Call<T>> factory,
+                              BiConsumer<Server, Response<T>> onResponse) {
+    Server owner = owner(owners, id);
+    if (owner != null) {
+      return new RoutedCall<>(() -> owner, factory, onResponse);
+    }
+    return new BlockingCall<>(() -> factory.apply(servers.get(0).service).request(), self -> {
+      Response<T> response = null;
+      for (Server server : candidates()) {
+        response = self.execute(server, factory);
+        if (response.code() != 404) {
+          onResponse.accept(server, response);
+          break;
+        }
+      }
+      return response;
+    });
+  }
+
+  /**
+   * Call on every server, ejected ones included so that they are not left behind when they
+   * come back. Returns the last success, or the first failure if all failed with an HTTP error.
+   *
+   * @throws BroadcastException If some servers failed and others succeeded, or any failed with
+   *     an I/O error.
+   */
+  private <T> Call<T> broadcast(Function<JobServerService, Call<T>> factory) {
+    return broadcast(factory, () -> { });
+  }
+
+  /**
+   * @param onSuccess Called once every server succeeded.
+   */
+  private <T> Call<T> broadcast(Function<JobServerService, Call<T>> factory,
+                                Runnable onSuccess) {
+    return new BlockingCall<>(() -> factory.apply(servers.get(0).service).request(), self -> {
+      Response<T> result = null;
+      Response<T> failure = null;
+      List<String> succeeded = new ArrayList<>();
+      Map<String, String> failed = new LinkedHashMap<>();
+      boolean ioFailure = false;
+      for (Server server : servers) {
+        try {
+          Response<T> response = self.execute(server, factory);
+          if (response.isSuccessful()) {
+            succeeded.add(server.url);
+            result = response;
+          } else {
+            failed.put(server.url, response.code() + " " + response.message());
+            if (failure == null) {
+              failure = response;
+            }
+          }
+        } catch (IOException e) {
+          if (self.isCanceled()) {
+            throw e;
+          }
+          failed.put(server.url, e.toString());
+          ioFailure = true;
+        }
+      }
+      if (failed.isEmpty()) {
+        onSuccess.run();
+        return result;
+      }
+      if (succeeded.isEmpty() && !ioFailure) {
+        return failure;
+      }
+      throw new BroadcastException(succeeded, failed);
+    });
+  }
+
+  /**
+   * A body sent to every server must be written once per server.
+   */
+  private void checkRepeatable(RequestBody body) {
+    if (servers.size() > 1 && body instanceof UploadBody && !((UploadBody) body).isRepeatable()) {
+      throw new IllegalArgumentException("An upload to " + servers.size() + " servers needs a"
+          + " body which can be written more than once, e.g. of a path or a buffer");
+    }
+  }
+
+  /**
+   * Call on every server and merge the bodies, returns the first failure.
+   */
+  private <T> Call<T> merge(Function<JobServerService, Call<T>> factory,
+                            Function<Map<Server, T>, T> merger) {
+    return new BlockingCall<>(() -> factory.apply(servers.get(0).service).request(), self -> {
+      Map<Server, T> bodies = new LinkedHashMap<>();
+      for (Server server : candidates()) {
+        Response<T> response = self.execute(server, factory);
+        if (!response.isSuccessful()) {
+          return response;
+        }
+        bodies.put(server, response.body());
+      }
+      return Response.success(merger.apply(bodies));
+    });
+  }
+
+  private Call<List<JobInfo>> mergeJobs(Function<JobServerService, Call<List<JobInfo>>> factory) {
+    return merge(factory, bodies -> {
+      List<JobInfo> jobs = new ArrayList<>();
+      bodies.forEach((server, list) -> {
+        for (JobInfo info : list) {
+          if (info.getJobId() != null) {
+            jobOwners.put(info.getJobId(), server);
+          }
+        }
+        jobs.addAll(list);
+      });
+      return jobs;
+    });
+  }
+
+  private static List<String> union(Map<Server, List<String>> bodies) {
+    Set<String> union = new LinkedHashSet<>();
+    bodies.values().forEach(union::addAll);
+    return new ArrayList<>(union);
+  }
+
+  @Override
+  public Call<HashMap<String, Binary>> getBinaries() {
+    return merge(JobServerService::getBinaries, bodies -> {
+      HashMap<String, Binary> binaries = new HashMap<>();
+      bodies.values().forEach(binaries::putAll);
+      return binaries;
+    });
+  }
+
+  @Override
+  public Call<String> uploadJar(String appName, RequestBody file) {
+    checkRepeatable(file);
+    return broadcast(service -> service.uploadJar(appName, file));
+  }
+
+  @Override
+  public Call<String> deleteBinary(String appName) {
+    return broadcast(service -> service.deleteBinary(appName));
+  }
+
+  @Override
+  public Call<List<String>> getContexts() {
+    return merge(JobServerService::getContexts, bodies -> {
+      bodies.forEach((server, list) -> {
+        for (String context : list) {
+          contextOwners.putIfAbsent(context, server);
+        }
+      });
+      return union(bodies);
+    });
+  }
+
+  @Override
+  public Call<String> getContext(String name) {
+    return byOwner(contextOwners, name, service -> service.getContext(name));
+  }
+
+  @Override
+  public Call<Result> createContext(String name, Map<String, Object> params) {
+    return new RoutedCall<>(this::pick, service -> service.createContext(name, params),
+        (server, response) -> {
+          if (response.isSuccessful()) {
+            contextOwners.put(name, server);
+          }
+        }, true);
+  }
+
+  @Override
+  public Call<Result> deleteContext(String name) {
+    return byOwner(contextOwners, name, service -> service.deleteContext(name),
+        (server, response) -> {
+          if (response.isSuccessful()) {
+            contextOwners.remove(name);
+          }
+        });
+  }
+
+  @Override
+  public Call<String> resetAllContexts() {
+    return broadcast(JobServerService::resetAllContexts, contextOwners::clear);
+  }
+
+  @Override
+  public Call<List<JobInfo>> getJobs() {
+    return mergeJobs(JobServerService::getJobs);
+  }
+
+  @Override
+  public Call<List<JobInfo>> getJobs(JobStatus status, Integer limit) {
+    return mergeJobs(service -> service.getJobs(status, limit));
+  }
+
+  /**
+   * Merged jobs re-encoded as a json array: with several servers this is not streamed.
+   */
+  @Override
+  public Call<ResponseBody> getJobsBody() {
+    return getJobsBody(null, null);
+  }
+
+  @Override
+  public Call<ResponseBody> getJobsBody(JobStatus status, Integer limit) {
+    return new BlockingCall<>(() -> getJobs(status, limit).request(), self -> {
+      Response<List<JobInfo>> response = self.execute(getJobs(status, limit));
+      if (!response.isSuccessful()) {
+        return Response.error(response.errorBody(), response.raw());
+      }
+      return Response.success(ResponseBody.create(MediaType.parse("application/json"),
+          JobServerClientBuilder.defaultGson().toJson(response.body())));
+    });
+  }
+
+  @Override
+  public Call<JobInfo> getJobInfo(String jobId) {
+    return byOwner(jobOwners, jobId, service -> service.getJobInfo(jobId));
+  }
+
+  @Override
+  public Call<ResponseBody> getJobInfoBody(String jobId) {
+    return byOwner(jobOwners, jobId, service -> service.getJobInfoBody(jobId));
+  }
+
+  @Override
+  public Call<ResponseBody> getJobConfig(String jobId) {
+    return byOwner(jobOwners, jobId, service -> service.getJobConfig(jobId));
+  }
+
+  @Override
+  public Call<JobInfo> startJob(Map<String, Object> params) {
+    Object context = params.get("context");
+    Server owner = context == null ? null : owner(contextOwners, context.toString());
+    return new RoutedCall<>(owner == null ? this::pick : () -> owner,
+        service -> service.startJob(params), (server, response) -> {
+          if (response.isSuccessful() && response.body() != null
+              && response.body().getJobId() != null) {
+            jobOwners.put(response.body().getJobId(), server);
+          }
+        }, owner == null);
+  }
+
+  /**
+   * Start a job on a server picked like {@link #startJob(Map)}. The job id is not read from the
+   * streamed response, so later calls about this job try the servers in turn.
+   */
+  @Override
+  public Call<ResponseBody> startJobBody(Map<String, Object> params) {
+    Object context = params.get("context");
+    Server owner = context == null ? null : owner(contextOwners, context.toString());
+    return new RoutedCall<>(owner == null ? this::pick : () -> owner,
+        service -> service.startJobBody(params), (server, response) -> { }, owner == null);
+  }
+
+  @Override
+  public Call<String> killJob(String jobId) {
+    return byOwner(jobOwners, jobId, service -> service.killJob(jobId));
+  }
+
+  @Override
+  public Call<List<String>> getData() {
+    return merge(JobServerService::getData, MultiServerJobServerService::union);
+  }
+
+  /**
+   * Uploaded to every server, the file name on the server varies, the last one is returned.
+   */
+  @Override
+  public Call<DataResult> uploadData(String prefix, RequestBody file) {
+    checkRepeatable(file);
+    return broadcast(service -> service.uploadData(prefix, file));
+  }
+
+  @Override
+  public Call<String> deleteData(String filename) {
+    return broadcast(service -> service.deleteData(filename));
+  }
+
+  @Override
+  public Call<String> resetData() {
+    return broadcast(JobServerService::resetData);
+  }
+
+  @Override
+  public void close() {
+    healthChecker.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  /**
+   * A call bound to one server, chosen when it is first used.
+   */
+  /**
+   * Whether a call failed before sending anything, so that it can go to another server.
+   */
+  private static boolean isConnectFailure(IOException e) {
+    return e instanceof ConnectException || e instanceof NoRouteToHostException
+        || e instanceof UnknownHostException;
+  }
+
+  private final class RoutedCall<T> implements Call<T> {
+    private final Supplier<Server> router;
+    private final Function<JobServerService, Call<T>> factory;
+    private final BiConsumer<Server, Response<T>> onResponse;
+    private final boolean failover;
+    private final Set<Server> tried = new HashSet<>();
+    private Server server;
+    private Call<T> delegate;
+    private volatile boolean canceled;
+
+    RoutedCall(Supplier<Server> router, Function<JobServerService, Call<T>> factory,
+               BiConsumer<Server, Response<T>> onResponse) {
+      this(router, factory, onResponse, false);
+    }
+
+    /**
+     * @param failover Retry on another server when the call fails to connect.
+     */
+    RoutedCall(Supplier<Server> router, Function<JobServerService, Call<T>> factory,
+               BiConsumer<Server, Response<T>> onResponse, boolean failover) {
+      this.router = router;
+      this.factory = factory;
+      this.onResponse = onResponse;
+      this.failover = failover;
+    }
+
+    private synchronized Call<T> delegate() {
+      if (delegate == null) {
+        route(router.get());
+      }
+      return delegate;
+    }
+
+    private synchronized Server server() {
+      return server;
+    }
+
+    private void route(Server next) {
+      server = next;
+      tried.add(next);
+      delegate = factory.apply(next.service);
+      if (canceled) {
+        delegate.cancel();
+      }
+    }
+
+    /**
+     * Mark the server of a failed call unhealthy and move to another one if the call can go
+     * there.
+     *
+     * @return The call on the next server, null if not retried.
+     */
+    private synchronized Call<T> failed(Server failedServer, IOException e) {
+      failedServer.healthy = false;
+      if (!failover || canceled || !isConnectFailure(e)) {
+        return null;
+      }
+      Server next = pick(tried);
+      if (next == null) {
+        return null;
+      }
+      LOG.info("Job server " + failedServer.url + " is unreachable, retrying on " + next.url);
+      route(next);
+      return delegate;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+      Call<T> call = delegate();
+      while (true) {
+        Server current = server();
+        current.outstanding.incrementAndGet();
+        try {
+          Response<T> response = call.execute();
+          onResponse.accept(current, response);
+          return response;
+        } catch (IOException e) {
+          if (call.isCanceled()) {
+            throw e;
+          }
+          call = failed(current, e);
+          if (call == null) {
+            throw e;
+          }
+        } finally {
+          current.outstanding.decrementAndGet();
+        }
+      }
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+      enqueue(delegate(), callback);
+    }
+
+    private void enqueue(Call<T> call, Callback<T> callback) {
+      Server current = server();
+      current.outstanding.incrementAndGet();
+      call.enqueue(new Callback<T>() {
+        @Override
+        public void onResponse(Call<T> c, Response<T> response) {
+          current.outstanding.decrementAndGet();
+          onResponse.accept(current, response);
+          callback.onResponse(RoutedCall.this, response);
+        }
+
+        @Override
+        public void onFailure(Call<T> c, Throwable throwable) {
+          current.outstanding.decrementAndGet();
+          if (throwable instanceof IOException && !c.isCanceled()) {
+            Call<T> next = failed(current, (IOException) throwable);
+            if (next != null) {
+              enqueue(next, callback);
+              return;
+            }
+          }
+          callback.onFailure(RoutedCall.this, throwable);
+        }
+      });
+    }
+
+    @Override
+    public boolean isExecuted() {
+      return delegate().isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+      canceled = true;
+      delegate().cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled || delegate().isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+      return new RoutedCall<>(router, factory, onResponse, failover);
+    }
+
+    @Override
+    public Request request() {
+      return delegate().request();
+    }
+  }
+
+  /**
+   * A call made of several calls executed in sequence, on a pooled thread when enqueued.
+   */
+  private final class BlockingCall<T> implements Call<T> {
+    private final Supplier<Request> request;
+    private final Body<T> body;
+    private volatile boolean executed;
+    private volatile boolean canceled;
+    private volatile Call<?> current;
+
+    BlockingCall(Supplier<Request> request, Body<T> body) {
+      this.request = request;
+      this.body = body;
+    }
+
+    <R> Response<R> execute(Server server, Function<JobServerService, Call<R>> factory)
+        throws IOException {
+      server.outstanding.incrementAndGet();
+      try {
+        return execute(factory.apply(server.service));
+      } catch (IOException e) {
+        if (!canceled) {
+          server.healthy = false;
+        }
+        throw e;
+      } finally {
+        server.outstanding.decrementAndGet();
+      }
+    }
+
+    <R> Response<R> execute(Call<R> call) throws IOException {
+      current = call;
+      if (canceled) {
+        call.cancel();
+      }
+      return call.execute();
+    }
+
+    @Override
+    public synchronized Response<T> execute() throws IOException {
+      if (executed) {
+        throw new IllegalStateException("Already executed.");
+      }
+      executed = true;
+      if (canceled) {
+        throw new IOException("Canceled");
+      }
+      return body.execute(this);
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+      executor.execute(() -> {
+        Response<T> response;
+        try {
+          response = execute();
+        } catch (Throwable t) {
+          callback.onFailure(this, t);
+          return;
+        }
+        callback.onResponse(this, response);
+      });
+    }
+
+    @Override
+    public boolean isExecuted() {
+      return executed;
+    }
+
+    @Override
+    public void cancel() {
+      canceled = true;
+      Call<?> call = current;
+      if (call != null) {
+        call.cancel();
+      }
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+      return new BlockingCall<>(request, body);
+    }
+
+    @Override
+    public Request request() {
+      return request.get();
+    }
+  }
+
+  private interface Body<T> {
+    Response<T> execute(MultiServerJobServerService.BlockingCall<T> self) throws IOException;
+  }
+}
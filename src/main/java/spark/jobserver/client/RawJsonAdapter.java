@@ -0,0 +1,89 @@
+package spark.jobserver.client;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Keeps a json value as its raw text, copied token by token without building a tree, e.g. a
+ * job result decoded only when asked for.
+ */
+class RawJsonAdapter extends TypeAdapter<String> {
+  @Override
+  public void write(JsonWriter out, String value) throws IOException {
+    if (value == null) {
+      out.nullValue();
+    } else {
+      out.jsonValue(value);
+    }
+  }
+
+  @Override
+  public String read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    StringWriter buffer = new StringWriter();
+    JsonWriter out = new JsonWriter(buffer);
+    out.setLenient(true);
+    out.setSerializeNulls(true);
+    copy(in, out);
+    out.flush();
+    return buffer.toString();
+  }
+
+  /**
+   * Copy the next value of a reader.
+   */
+  static void copy(JsonReader in, JsonWriter out) throws IOException {
+    int depth = 0;
+    do {
+      switch (in.peek()) {
+        case BEGIN_ARRAY:
+          in.beginArray();
+          out.beginArray();
+          depth++;
+          break;
+        case END_ARRAY:
+          in.endArray();
+          out.endArray();
+          depth--;
+          break;
+        case BEGIN_OBJECT:
+          in.beginObject();
+          out.beginObject();
+          depth++;
+          break;
+        case END_OBJECT:
+          in.endObject();
+          out.endObject();
+          depth--;
+          break;
+        case NAME:
+          out.name(in.nextName());
+          break;
+        case STRING:
+          out.value(in.nextString());
+          break;
+        case NUMBER:
+          // keep the number as written
+          out.jsonValue(in.nextString());
+          break;
+        case BOOLEAN:
+          out.value(in.nextBoolean());
+          break;
+        case NULL:
+          in.nextNull();
+          out.nullValue();
+          break;
+        default:
+          throw new IllegalStateException("Unexpected " + in.peek() + " at " + in.getPath());
+      }
+    } while (depth > 0);
+  }
+}
@@ -0,0 +1,195 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Client-side cache of the <code>/binaries</code>, <code>/contexts</code> and <code>/data</code>
+ * listings, which are read before most submissions and rarely change.
+ *
+ * <p>Successful <code>GET</code> responses are kept for a fixed time in a bounded LRU map keyed by
+ * url. Any other method on one of these resources, e.g. <code>uploadJar</code>,
+ * <code>deleteContext</code> or <code>resetData</code>, drops every cached response of that
+ * resource, so a client always sees its own writes. Changes made by other clients show up after
+ * the TTL at most. Add it with {@link JobServerClientBuilder#addInterceptor(Interceptor)}.
+ */
+public class ResponseCache implements Interceptor {
+  private static final Set<String> RESOURCES = new HashSet<>(
+      Arrays.asList("binaries", "contexts", "data"));
+
+  private final Map<String, Entry> entries;
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private static final class Entry {
+    final String resource;
+    final long generation;
+    final long expiresAt;
+    final int code;
+    final String message;
+    final Protocol protocol;
+    final Headers headers;
+    final MediaType contentType;
+    final byte[] body;
+
+    Entry(String resource, long generation, long expiresAt, Response response, byte[] body) {
+      this.resource = resource;
+      this.generation = generation;
+      this.expiresAt = expiresAt;
+      this.code = response.code();
+      this.message = response.message();
+      this.protocol = response.protocol();
+      this.headers = response.headers();
+      this.contentType = response.body().contentType();
+      this.body = body;
+    }
+  }
+
+  /**
+   * Cache keeping up to 256 responses for 10 seconds.
+   */
+  public ResponseCache() {
+    this(10, TimeUnit.SECONDS, 256);
+  }
+
+  public ResponseCache(long ttl, TimeUnit unit, int maxEntries) {
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    String resource = resource(request);
+    if (resource == null) {
+      return chain.proceed(request);
+    }
+    if (!"GET".equals(request.method())) {
+      invalidate(resource);
+      try {
+        return chain.proceed(request);
+      } finally {
+        // a read started meanwhile must not cache the state before the write
+        invalidate(resource);
+      }
+    }
+
+    String key = request.url().toString();
+    long now = System.nanoTime();
+    long generation = generation(resource).get();
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && (entry.expiresAt - now <= 0 || entry.generation != generation)) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (entry != null) {
+      hits.incrementAndGet();
+      return new Response.Builder()
+          .request(request)
+          .protocol(entry.protocol)
+          .code(entry.code)
+          .message(entry.message)
+          .headers(entry.headers)
+          .body(ResponseBody.create(entry.contentType, entry.body))
+          .sentRequestAtMillis(System.currentTimeMillis())
+          .receivedResponseAtMillis(System.currentTimeMillis())
+          .build();
+    }
+
+    misses.incrementAndGet();
+    Response response = chain.proceed(request);
+    if (!response.isSuccessful() || response.body() == null) {
+      return response;
+    }
+    ResponseBody body = response.body();
+    MediaType contentType = body.contentType();
+    byte[] bytes;
+    try {
+      bytes = body.bytes();
+    } finally {
+      body.close();
+    }
+    if (generation(resource).get() == generation) {
+      synchronized (entries) {
+        entries.put(key, new Entry(resource, generation, now + ttlNanos, response, bytes));
+      }
+    }
+    return response.newBuilder().body(ResponseBody.create(contentType, bytes)).build();
+  }
+
+  /**
+   * Drop the cached responses of a resource, e.g. after another client changed it.
+   *
+   * @param resource <code>binaries</code>, <code>contexts</code> or <code>data</code>
+   */
+  public void invalidate(String resource) {
+    generation(resource).incrementAndGet();
+    synchronized (entries) {
+      Iterator<Entry> it = entries.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().resource.equals(resource)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    RESOURCES.forEach(this::invalidate);
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private AtomicLong generation(String resource) {
+    return generations.computeIfAbsent(resource, r -> new AtomicLong());
+  }
+
+  private static String resource(Request request) {
+    List<String> segments = request.url().pathSegments();
+    for (String segment : segments) {
+      if (RESOURCES.contains(segment)) {
+        return segment;
+      }
+    }
+    return null;
+  }
+}
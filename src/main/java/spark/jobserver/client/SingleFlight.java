@@ -0,0 +1,175 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * Coalesces concurrent identical <code>GET</code> requests into one HTTP request.
+ *
+ * <p>The first caller for a url sends the request, callers arriving while it is in flight wait
+ * for it and get a copy of its response, or of its failure. Bodies over
+ * {@link #maxBodyBytes(long)} are not shared, e.g. streamed job listings, the waiting callers
+ * then send their own request, as they do when the first call was canceled. Add it with
+ * {@link JobServerClientBuilder#addInterceptor(Interceptor)}.
+ */
+public class SingleFlight implements Interceptor {
+  private static final long POLL_MILLIS = 100;
+
+  private final ConcurrentHashMap<String, CompletableFuture<Shared>> flights =
+      new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+  private long maxBodyBytes = 1024 * 1024;
+
+  private static final class Shared {
+    final int code;
+    final String message;
+    final Protocol protocol;
+    final Headers headers;
+    final MediaType contentType;
+    final byte[] body;
+    final long sentAt;
+    final long receivedAt;
+
+    Shared(Response response, MediaType contentType, byte[] body) {
+      this.code = response.code();
+      this.message = response.message();
+      this.protocol = response.protocol();
+      this.headers = response.headers();
+      this.contentType = contentType;
+      this.body = body;
+      this.sentAt = response.sentRequestAtMillis();
+      this.receivedAt = response.receivedResponseAtMillis();
+    }
+
+    Response toResponse(Request request) {
+      return new Response.Builder()
+          .request(request)
+          .protocol(protocol)
+          .code(code)
+          .message(message)
+          .headers(headers)
+          .body(ResponseBody.create(contentType, body))
+          .sentRequestAtMillis(sentAt)
+          .receivedResponseAtMillis(receivedAt)
+          .build();
+    }
+  }
+
+  /**
+   * Largest response body shared with waiting callers, 1 MB by default.
+   */
+  public SingleFlight maxBodyBytes(long maxBodyBytes) {
+    this.maxBodyBytes = maxBodyBytes;
+    return this;
+  }
+
+  /**
+   * Number of calls served by another call's request.
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (!"GET".equals(request.method())) {
+      return chain.proceed(request);
+    }
+
+    String key = request.url().toString();
+    CompletableFuture<Shared> flight = new CompletableFuture<>();
+    CompletableFuture<Shared> leader = flights.putIfAbsent(key, flight);
+    if (leader != null) {
+      Shared shared = await(leader, chain);
+      if (shared == null) {
+        return chain.proceed(request);
+      }
+      coalesced.increment();
+      return shared.toResponse(request);
+    }
+
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException | RuntimeException e) {
+      flights.remove(key, flight);
+      if (chain.call().isCanceled()) {
+        flight.complete(null);
+      } else {
+        flight.completeExceptionally(e);
+      }
+      throw e;
+    }
+
+    Shared shared;
+    try {
+      shared = share(response);
+    } catch (IOException | RuntimeException e) {
+      flights.remove(key, flight);
+      flight.complete(null);
+      throw e;
+    }
+    flights.remove(key, flight);
+    flight.complete(shared);
+    return shared == null ? response : shared.toResponse(request);
+  }
+
+  /**
+   * Read the body if it is small enough to be shared, null otherwise.
+   */
+  private Shared share(Response response) throws IOException {
+    ResponseBody body = response.body();
+    if (body == null || body.contentLength() > maxBodyBytes) {
+      return null;
+    }
+    BufferedSource source = body.source();
+    if (body.contentLength() < 0 && source.request(maxBodyBytes + 1)) {
+      // unknown length and larger than the limit, the read bytes stay buffered
+      return null;
+    }
+    byte[] bytes;
+    try {
+      bytes = source.readByteArray();
+    } finally {
+      body.close();
+    }
+    return new Shared(response, body.contentType(), bytes);
+  }
+
+  private static Shared await(CompletableFuture<Shared> flight, Chain chain) throws IOException {
+    try {
+      while (true) {
+        if (chain.call().isCanceled()) {
+          throw new IOException("Canceled");
+        }
+        try {
+          return flight.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          // check for cancellation again
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for " + chain.request().url());
+    } catch (ExecutionException e) {
+      throw new IOException("Coalesced request failed: " + e.getCause().getMessage(),
+          e.getCause());
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Client-side admission control of job submissions (<code>POST /jobs</code>), with an
+ * in-flight limit adapted by AIMD.
+ *
+ * <p>The limit grows by one for each window of successful submissions while at least half of
+ * it is used, and is multiplied by a back-off ratio when a submission fails with an I/O error,
+ * a 429 or 5xx response, or takes longer than the latency threshold. It is cut once per
+ * overload: failures of submissions started before the last cut are part of the same overload
+ * and leave the limit as is. Submissions over the limit wait in a bounded queue for a bounded
+ * time, then fail with a {@link LimitExceededException}. Other requests pass through. Add it
+ * with {@link JobServerClientBuilder#addInterceptor(Interceptor)}.
+ *
+ * <p>A waiting submission blocks its calling thread. For {@link retrofit2.Call#enqueue} that is
+ * an OkHttp dispatcher thread, which holds one of the dispatcher's slots while waiting, see
+ * {@link JobServerClientBuilder#maxRequests(int)} and
+ * {@link JobServerClientBuilder#maxRequestsPerHost(int)}, both 64 by default. Keep them above
+ * the max limit when submitting asynchronously, or waiting submissions starve other calls.
+ */
+public class StartJobLimiter implements Interceptor {
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private int minLimit = 1;
+  private int maxLimit = 256;
+  private double backoffRatio = 0.75;
+  private long latencyThresholdNanos = TimeUnit.SECONDS.toNanos(30);
+  private int maxQueued = 1024;
+  private long maxWaitNanos = TimeUnit.SECONDS.toNanos(60);
+  private double limit;
+  private int inFlight;
+  private int queued;
+  private long started;
+  private long lastCut = -1;
+
+  /**
+   * Thrown when a submission could not get a slot, the server is overloaded.
+   */
+  public static class LimitExceededException extends IOException {
+    public LimitExceededException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Limiter starting with 16 concurrent submissions.
+   */
+  public StartJobLimiter() {
+    this(16);
+  }
+
+  public StartJobLimiter(int initialLimit) {
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Bounds of the limit, 1 to 256 by default.
+   */
+  public StartJobLimiter limits(int min, int max) {
+    this.minLimit = min;
+    this.maxLimit = max;
+    return this;
+  }
+
+  /**
+   * Factor applied to the limit on overload, 0.75 by default.
+   */
+  public StartJobLimiter backoffRatio(double backoffRatio) {
+    this.backoffRatio = backoffRatio;
+    return this;
+  }
+
+  /**
+   * Submissions slower than this count as overload, 30 seconds by default.
+   */
+  public StartJobLimiter latencyThreshold(long threshold, TimeUnit unit) {
+    this.latencyThresholdNanos = unit.toNanos(threshold);
+    return this;
+  }
+
+  /**
+   * Max number of waiting submissions and how long each may wait, 1024 and 60 seconds by
+   * default. A zero wait rejects submissions over the limit right away.
+   */
+  public StartJobLimiter queue(int maxQueued, long maxWait, TimeUnit unit) {
+    this.maxQueued = maxQueued;
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    return this;
+  }
+
+  /**
+   * Current in-flight limit.
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    if (!isStartJob(request)) {
+      return chain.proceed(request);
+    }
+
+    long sequence = acquire();
+    long start = System.nanoTime();
+    boolean overload = true;
+    try {
+      Response response = chain.proceed(request);
+      overload = response.code() == 429 || response.code() >= 500;
+      return response;
+    } finally {
+      release(sequence, overload || System.nanoTime() - start > latencyThresholdNanos);
+    }
+  }
+
+  private static boolean isStartJob(Request request) {
+    if (!"POST".equals(request.method())) {
+      return false;
+    }
+    int size = request.url().pathSize();
+    return size > 0 && "jobs".equals(request.url().pathSegments().get(size - 1));
+  }
+
+  /**
+   * @return Sequence number of the submission.
+   */
+  private long acquire() throws IOException {
+    lock.lock();
+    try {
+      if (inFlight < (int) limit) {
+        inFlight++;
+        return started++;
+      }
+      if (queued >= maxQueued || maxWaitNanos <= 0) {
+        throw new LimitExceededException("Too many job submissions in flight: " + inFlight);
+      }
+      queued++;
+      try {
+        long nanos = maxWaitNanos;
+        while (inFlight >= (int) limit) {
+          if (nanos <= 0) {
+            throw new LimitExceededException("Timed out waiting for a job submission slot, "
+                + inFlight + " in flight");
+          }
+          nanos = available.awaitNanos(nanos);
+        }
+        inFlight++;
+        return started++;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a job submission slot");
+      } finally {
+        queued--;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(long sequence, boolean overload) {
+    lock.lock();
+    try {
+      if (overload) {
+        if (sequence > lastCut) {
+          limit = Math.max(minLimit, limit * backoffRatio);
+          // submissions already in flight saw the old limit
+          lastCut = started - 1;
+        }
+      } else if (inFlight * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      inFlight--;
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package spark.jobserver.client;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Cache of <code>GET /jobs/&lt;jobId&gt;</code> and <code>GET /jobs/&lt;jobId&gt;/config</code>
+ * responses of jobs in a terminal status, which never change.
+ *
+ * <p>Responses are kept as bytes by job id in an LRU map bounded by their total size, a
+ * job's config is kept once its info was seen terminal. Jobs in another status always go to
+ * the server, killing a job drops its entry. Responses over the max entry size, e.g. a large
+ * result read with {@link JobResultReader}, pass through without being buffered. Add it with
+ * {@link JobServerClientBuilder#addInterceptor(Interceptor)}.
+ */
+public class TerminalJobCache implements Interceptor {
+  /**
+   * Estimated memory of an entry besides its bodies.
+   */
+  private static final int ENTRY_OVERHEAD = 256;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final long maxBytes;
+  private long maxEntryBytes = 1024 * 1024;
+  private long bytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private static final class Entry {
+    final MediaType infoType;
+    final byte[] info;
+    MediaType configType;
+    byte[] config;
+
+    Entry(MediaType infoType, byte[] info) {
+      this.infoType = infoType;
+      this.info = info;
+    }
+
+    long weight(String jobId) {
+      return ENTRY_OVERHEAD + jobId.length() * 2 + info.length
+          + (config == null ? 0 : config.length);
+    }
+  }
+
+  /**
+   * Cache of up to 16 MB of responses.
+   */
+  public TerminalJobCache() {
+    this(16 * 1024 * 1024);
+  }
+
+  public TerminalJobCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Largest response cached, 1 MB by default.
+   */
+  public TerminalJobCache maxEntryBytes(long maxEntryBytes) {
+    this.maxEntryBytes = maxEntryBytes;
+    return this;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    List<String> segments = request.url().pathSegments();
+    int size = segments.size();
+    boolean config = size >= 3 && "jobs".equals(segments.get(size - 3))
+        && "config".equals(segments.get(size - 1));
+    if (!config && (size < 2 || !"jobs".equals(segments.get(size - 2)))) {
+      return chain.proceed(request);
+    }
+    String jobId = segments.get(config ? size - 2 : size - 1);
+    if ("DELETE".equals(request.method())) {
+      invalidate(jobId);
+      return chain.proceed(request);
+    }
+    if (!"GET".equals(request.method())) {
+      return chain.proceed(request);
+    }
+
+    synchronized (this) {
+      Entry entry = entries.get(jobId);
+      if (entry != null && (!config || entry.config != null)) {
+        hits.incrementAndGet();
+        return response(request, config ? entry.configType : entry.infoType,
+            config ? entry.config : entry.info);
+      }
+    }
+    misses.incrementAndGet();
+    Response response = chain.proceed(request);
+    ResponseBody body = response.body();
+    if (!response.isSuccessful() || body == null) {
+      return response;
+    }
+    synchronized (this) {
+      if (config && !entries.containsKey(jobId)) {
+        return response;
+      }
+    }
+    // an unknown length is buffered up to the max, which the response then reads first
+    long length = body.contentLength();
+    if (length > maxEntryBytes || length < 0 && body.source().request(maxEntryBytes + 1)) {
+      return response;
+    }
+
+    MediaType contentType = body.contentType();
+    byte[] content;
+    try {
+      content = body.bytes();
+    } finally {
+      body.close();
+    }
+    if (config) {
+      putConfig(jobId, contentType, content);
+    } else if (isTerminal(content)) {
+      putInfo(jobId, contentType, content);
+    }
+    return response.newBuilder().body(ResponseBody.create(contentType, content)).build();
+  }
+
+  public synchronized void invalidate(String jobId) {
+    Entry entry = entries.remove(jobId);
+    if (entry != null) {
+      bytes -= entry.weight(jobId);
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Estimated memory used by the cached responses.
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private synchronized void putInfo(String jobId, MediaType contentType, byte[] content) {
+    invalidate(jobId);
+    Entry entry = new Entry(contentType, content);
+    entries.put(jobId, entry);
+    bytes += entry.weight(jobId);
+    evict();
+  }
+
+  private synchronized void putConfig(String jobId, MediaType contentType, byte[] content) {
+    Entry entry = entries.get(jobId);
+    if (entry == null || entry.config != null) {
+      return;
+    }
+    entry.configType = contentType;
+    entry.config = content;
+    bytes += content.length;
+    evict();
+  }
+
+  private void evict() {
+    while (bytes > maxBytes && !entries.isEmpty()) {
+      invalidate(entries.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Read the top level status of a job info without decoding the rest.
+   */
+  private static boolean isTerminal(byte[] content) {
+    Reader reader = new InputStreamReader(new ByteArrayInputStream(content),
+        StandardCharsets.UTF_8);
+    try (JsonReader json = new JsonReader(reader)) {
+      json.setLenient(true);
+      if (json.peek() != JsonToken.BEGIN_OBJECT) {
+        return false;
+      }
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("status".equals(json.nextName()) && json.peek() == JsonToken.STRING) {
+          return JobStatus.valueOf(json.nextString()).isTerminal();
+        }
+        json.skipValue();
+      }
+      return false;
+    } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+      return false;
+    }
+  }
+
+  private static Response response(Request request, MediaType contentType, byte[] content) {
+    long now = System.currentTimeMillis();
+    return new Response.Builder()
+        .request(request)
+        .protocol(Protocol.HTTP_1_1)
+        .code(200)
+        .message("OK")
+        .body(ResponseBody.create(contentType, content))
+        .sentRequestAtMillis(now)
+        .receivedResponseAtMillis(now)
+        .build();
+  }
+}
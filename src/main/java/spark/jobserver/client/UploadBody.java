@@ -0,0 +1,282 @@
+package spark.jobserver.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body streamed from a file, a {@link FileChannel}, a (memory-mapped)
+ * {@link ByteBuffer} or an {@link InputStream} of known length.
+ *
+ * <p>Bytes move in chunks of Okio segments straight from the source to the socket, so heap use
+ * does not depend on the body size. As chunks go out the body reports progress and updates an
+ * optional digest, read with {@link #checksum()} once the body is written.
+ */
+public class UploadBody extends RequestBody {
+  public static final MediaType JAR = MediaType.parse("application/java-archive");
+  public static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+  private static final long CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Notified on the writing thread after each chunk.
+   */
+  public interface ProgressListener {
+    void onProgress(long bytesWritten, long contentLength);
+  }
+
+  private interface Content {
+    /**
+     * Open a reader from the start of the content, once per write of the body.
+     */
+    Reader open() throws IOException;
+  }
+
+  private interface Reader extends Closeable {
+    /**
+     * Read at most byteCount bytes into the sink, -1 at the end.
+     */
+    long read(Buffer sink, long byteCount) throws IOException;
+  }
+
+  private final MediaType contentType;
+  private final long contentLength;
+  private final Content content;
+  private final boolean repeatable;
+  private ProgressListener listener;
+  private MessageDigest digest;
+  private ByteString checksum;
+  private boolean opened;
+  private IOException failure;
+
+  private UploadBody(MediaType contentType, long contentLength, Content content) {
+    this(contentType, contentLength, content, true);
+  }
+
+  private UploadBody(MediaType contentType, long contentLength, Content content,
+                     boolean repeatable) {
+    this.contentType = contentType;
+    this.contentLength = contentLength;
+    this.content = content;
+    this.repeatable = repeatable;
+  }
+
+  /**
+   * Stream a file, re-opened each time the body is written.
+   */
+  public static UploadBody of(Path path, MediaType contentType) throws IOException {
+    long length = Files.size(path);
+    return new UploadBody(contentType, length, () -> {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      return channelReader(channel, 0, length, channel);
+    });
+  }
+
+  /**
+   * Stream a region of a channel, which is left open.
+   */
+  public static UploadBody of(FileChannel channel, long position, long length,
+                              MediaType contentType) {
+    return new UploadBody(contentType, length,
+        () -> channelReader(channel, position, length, () -> { }));
+  }
+
+  /**
+   * Stream the remaining bytes of a buffer, e.g. a {@link java.nio.MappedByteBuffer}. The
+   * buffer's position is left unchanged.
+   */
+  public static UploadBody of(ByteBuffer buffer, MediaType contentType) {
+    return new UploadBody(contentType, buffer.remaining(), () -> {
+      ByteBuffer source = buffer.duplicate();
+      return new Reader() {
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+          if (!source.hasRemaining()) {
+            return -1;
+          }
+          int n = (int) Math.min(byteCount, source.remaining());
+          ByteBuffer slice = source.slice();
+          slice.limit(n);
+          sink.write(slice);
+          source.position(source.position() + n);
+          return n;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    });
+  }
+
+  /**
+   * Stream length bytes of an input stream, which is left open. Such a body can be written
+   * only once, so the call cannot be retried: a second write fails with the error of the
+   * first one, if any.
+   */
+  public static UploadBody of(InputStream in, long length, MediaType contentType) {
+    Source source = Okio.source(in);
+    return new UploadBody(contentType, length, () -> new Reader() {
+      private long remaining = length;
+
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        if (remaining == 0) {
+          return -1;
+        }
+        long n = source.read(sink, Math.min(byteCount, remaining));
+        if (n > 0) {
+          remaining -= n;
+        }
+        return n;
+      }
+
+      @Override
+      public void close() {
+      }
+    }, false);
+  }
+
+  private static Reader channelReader(FileChannel channel, long position, long length,
+                                      Closeable onClose) {
+    return new Reader() {
+      private long offset = 0;
+
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        if (offset >= length) {
+          return -1;
+        }
+        long n = channel.transferTo(position + offset, Math.min(byteCount, length - offset),
+            sink);
+        if (n <= 0) {
+          return -1;
+        }
+        offset += n;
+        return n;
+      }
+
+      @Override
+      public void close() throws IOException {
+        onClose.close();
+      }
+    };
+  }
+
+  /**
+   * Whether the body can be written more than once, false for an input stream.
+   */
+  public boolean isRepeatable() {
+    return repeatable;
+  }
+
+  public UploadBody progress(ProgressListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Compute a digest of the bytes sent, e.g. <code>SHA-256</code> or <code>MD5</code>.
+   */
+  public UploadBody checksum(String algorithm) {
+    try {
+      this.digest = MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Digest of the bytes sent by the last complete write, null if not available.
+   */
+  public ByteString checksum() {
+    return checksum;
+  }
+
+  @Override
+  public MediaType contentType() {
+    return contentType;
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    if (!repeatable) {
+      if (failure != null) {
+        // e.g. OkHttp retrying on another route, report why the first write failed
+        throw new IOException(failure.getMessage(), failure);
+      }
+      if (opened) {
+        throw new IOException("An input stream body can be written once");
+      }
+      opened = true;
+    }
+    try {
+      write(sink);
+    } catch (IOException e) {
+      failure = e;
+      throw e;
+    }
+  }
+
+  private void write(BufferedSink sink) throws IOException {
+    checksum = null;
+    if (digest != null) {
+      digest.reset();
+    }
+    OutputStream digestStream = new OutputStream() {
+      @Override
+      public void write(int b) {
+        digest.update((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        digest.update(b, off, len);
+      }
+    };
+
+    Buffer chunk = new Buffer();
+    long written = 0;
+    try (Reader reader = content.open()) {
+      for (long n = reader.read(chunk, CHUNK_SIZE); n != -1; n = reader.read(chunk, CHUNK_SIZE)) {
+        if (digest != null) {
+          // reads the segments in place
+          chunk.copyTo(digestStream, 0, chunk.size());
+        }
+        written += chunk.size();
+        sink.write(chunk, chunk.size());
+        if (listener != null) {
+          listener.onProgress(written, contentLength);
+        }
+      }
+    }
+    if (written != contentLength) {
+      throw new IOException("Expected " + contentLength + " bytes but sent " + written);
+    }
+    if (digest != null) {
+      checksum = ByteString.of(digest.digest());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+public class ClientMetricsTest extends TestCase {
+  private static String name(String method, String url) {
+    boolean body = "POST".equals(method) || "PUT".equals(method);
+    return ClientMetrics.endpointName(new Request.Builder().url(url)
+        .method(method, body ? RequestBody.create(null, new byte[0]) : null).build());
+  }
+
+  public void testEndpointName() {
+    for (String base : new String[] {"http://host:8090/", "http://host/jobserver/"}) {
+      assertEquals("getBinaries", name("GET", base + "binaries"));
+      assertEquals("uploadJar", name("POST", base + "binaries/app"));
+      assertEquals("deleteBinary", name("DELETE", base + "binaries/app"));
+      assertEquals("getContexts", name("GET", base + "contexts"));
+      assertEquals("getContext", name("GET", base + "contexts/ctx"));
+      assertEquals("createContext", name("POST", base + "contexts/ctx?num-cpu-cores=1"));
+      assertEquals("deleteContext", name("DELETE", base + "contexts/ctx"));
+      assertEquals("resetAllContexts", name("PUT", base + "contexts?reset=reboot"));
+      assertEquals("getJobs", name("GET", base + "jobs?limit=10"));
+      assertEquals("startJob", name("POST", base + "jobs?appName=app"));
+      assertEquals("getJobInfo", name("GET", base + "jobs/1"));
+      assertEquals("killJob", name("DELETE", base + "jobs/1"));
+      assertEquals("getJobConfig", name("GET", base + "jobs/1/config"));
+      assertEquals("getData", name("GET", base + "data"));
+      assertEquals("uploadData", name("POST", base + "data/input"));
+      assertEquals("deleteData", name("DELETE", base + "data/input"));
+      assertEquals("resetData", name("PUT", base + "data?reset=reboot"));
+    }
+    assertEquals("GET /healthz", name("GET", "http://host/healthz"));
+  }
+
+  public void testHistogram() {
+    for (long micros = 0; micros < 1L << 40; micros = micros * 5 / 4 + 1) {
+      int index = LatencyHistogram.index(micros);
+      long upper = LatencyHistogram.upperBound(index);
+      assertTrue(micros + " <= " + upper, micros <= upper);
+      assertTrue(micros + " within 12.5% of " + upper, upper - micros <= micros / 8);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.upperBound(index - 1) < micros);
+      }
+    }
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500, histogram.getMean(), 1);
+    long p50 = histogram.percentile(0.5);
+    assertTrue(p50 >= 500_000 && p50 <= 500_000 * 9 / 8);
+  }
+
+  public void testTtfb() throws IOException {
+    ClientMetrics metrics = new ClientMetrics();
+    try (FakeJobServer server = new FakeJobServer().serviceTime(20)) {
+      JobServerService service = new JobServerClientBuilder().baseUrl(server.url())
+          .eventListenerFactory(metrics).build();
+      for (int i = 0; i < 5; i++) {
+        assertEquals(404, service.getJobInfo("missing").execute().code());
+      }
+    }
+    ClientMetrics.EndpointMetrics endpoint = metrics.getEndpoints().get("getJobInfo");
+    assertEquals(5, endpoint.histogram(ClientMetrics.Phase.TOTAL).getCount());
+    assertEquals(5, endpoint.histogram(ClientMetrics.Phase.TTFB).getCount());
+    // the server time lands in TTFB
+    assertTrue(endpoint.histogram(ClientMetrics.Phase.TTFB).getMean() >= 20_000);
+    assertEquals(Long.valueOf(5), endpoint.getErrors().get(404));
+    assertEquals(0, endpoint.getInFlight());
+  }
+}
@@ -0,0 +1,415 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in of a spark job server, for tests and load tests of the client without a
+ * cluster.
+ *
+ * <p>Implements <code>/binaries</code>, <code>/contexts</code>, <code>/jobs</code> and
+ * <code>/data</code> with json shaped like {@link Binary}, {@link Result}, {@link JobInfo} and
+ * {@link DataResult}. A job runs for a configured duration, then finishes, or fails at the
+ * configured job error rate. Each request takes the configured service time, and fails with
+ * a 500 at the configured failure rate. The job history is bounded, the oldest jobs are
+ * forgotten first.
+ */
+public class FakeJobServer implements AutoCloseable {
+  private static final Gson GSON = new Gson();
+
+  static {
+    // without it each small response waits for a delayed ack, about 40ms per request
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Date> binaries = new ConcurrentHashMap<>();
+  private final Set<String> contexts = ConcurrentHashMap.newKeySet();
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+  /** Newest first. */
+  private final Deque<Job> history = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger historySize = new AtomicInteger();
+  private final Map<String, Date> data = new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private volatile long serviceTimeMillis;
+  private volatile long jobDurationMillis = 100;
+  private volatile int maxJobs = 10_000;
+  private volatile double failureRate;
+  private volatile double jobErrorRate;
+  private volatile Supplier<String> resultJson = () -> "{\"message\":\"done\"}";
+
+  private static final class Job {
+    final String jobId;
+    final String context;
+    final String classPath;
+    final Map<String, String> config;
+    final Date startTime = new Date();
+    final long startNanos = System.nanoTime();
+    final long durationMillis;
+    final boolean error;
+    final String result;
+    volatile boolean killed;
+
+    Job(String jobId, String context, String classPath, Map<String, String> config,
+        long durationMillis, boolean error, String result) {
+      this.jobId = jobId;
+      this.context = context;
+      this.classPath = classPath;
+      this.config = config;
+      this.durationMillis = durationMillis;
+      this.error = error;
+      this.result = result;
+    }
+
+    long elapsedMillis() {
+      return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    JobStatus status() {
+      if (killed) {
+        return JobStatus.ERROR;
+      }
+      if (elapsedMillis() < durationMillis) {
+        return JobStatus.RUNNING;
+      }
+      return error ? JobStatus.ERROR : JobStatus.FINISHED;
+    }
+  }
+
+  /**
+   * Start a server on a free local port.
+   */
+  public FakeJobServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "fake-job-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  public String url() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  public FakeJobServer serviceTime(long millis) {
+    this.serviceTimeMillis = millis;
+    return this;
+  }
+
+  public FakeJobServer jobDuration(long millis) {
+    this.jobDurationMillis = millis;
+    return this;
+  }
+
+  /**
+   * Number of jobs remembered, 10000 by default.
+   */
+  public FakeJobServer maxJobs(int maxJobs) {
+    this.maxJobs = maxJobs;
+    return this;
+  }
+
+  /**
+   * Fraction of requests failing with a 500.
+   */
+  public FakeJobServer failureRate(double failureRate) {
+    this.failureRate = failureRate;
+    return this;
+  }
+
+  /**
+   * Fraction of jobs ending in ERROR.
+   */
+  public FakeJobServer jobErrorRate(double jobErrorRate) {
+    this.jobErrorRate = jobErrorRate;
+    return this;
+  }
+
+  /**
+   * Json of the result of finished jobs.
+   */
+  public FakeJobServer result(Supplier<String> resultJson) {
+    this.resultJson = resultJson;
+    return this;
+  }
+
+  /**
+   * Number of requests handled.
+   */
+  public long requests() {
+    return requests.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try (InputStream in = exchange.getRequestBody()) {
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) != -1) {
+        // uploads are discarded
+      }
+    }
+    try {
+      if (serviceTimeMillis > 0) {
+        Thread.sleep(serviceTimeMillis);
+      }
+      if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+        respond(exchange, 500, error("injected failure"));
+        return;
+      }
+      route(exchange);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, error("interrupted"));
+    } catch (RuntimeException e) {
+      respond(exchange, 500, error(e.toString()));
+    }
+  }
+
+  private void route(HttpExchange exchange) throws IOException, InterruptedException {
+    String method = exchange.getRequestMethod();
+    String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+    Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+    String resource = path[0];
+    String id = path.length > 1 ? URLDecoder.decode(path[1], "UTF-8") : null;
+    String key = method + " " + resource + (id == null ? "" : "/")
+        + (path.length > 2 ? "/" : "");
+
+    switch (key) {
+      case "GET binaries": {
+        Map<String, Object> result = new LinkedHashMap<>();
+        binaries.forEach((name, time) -> {
+          Map<String, Object> binary = new LinkedHashMap<>();
+          binary.put("binary-type", "Jar");
+          binary.put("upload-time", format(time));
+          result.put(name, binary);
+        });
+        respond(exchange, 200, GSON.toJson(result));
+        return;
+      }
+      case "POST binaries/":
+        binaries.put(id, new Date());
+        respond(exchange, 201, GSON.toJson("OK"));
+        return;
+      case "DELETE binaries/":
+        respond(exchange, binaries.remove(id) == null ? 404 : 200, GSON.toJson("OK"));
+        return;
+      case "GET contexts":
+        respond(exchange, 200, GSON.toJson(new ArrayList<>(contexts)));
+        return;
+      case "GET contexts/":
+        respond(exchange, contexts.contains(id) ? 200 : 404, GSON.toJson(id));
+        return;
+      case "POST contexts/":
+        if (!contexts.add(id)) {
+          respond(exchange, 400, error("context " + id + " exists"));
+        } else {
+          respond(exchange, 200, success("Context initialized"));
+        }
+        return;
+      case "DELETE contexts/":
+        if (contexts.remove(id)) {
+          respond(exchange, 200, success(""));
+        } else {
+          respond(exchange, 404, error("context " + id + " not found"));
+        }
+        return;
+      case "PUT contexts":
+        contexts.clear();
+        respond(exchange, 200, GSON.toJson("OK"));
+        return;
+      case "GET jobs":
+        respond(exchange, 200, listJobs(query));
+        return;
+      case "GET jobs/":
+        Job job = jobs.get(id);
+        respond(exchange, job == null ? 404 : 200,
+            job == null ? error("No such job ID " + id) : toJson(job, true).toString());
+        return;
+      case "GET jobs//":
+        job = jobs.get(id);
+        respond(exchange, job == null ? 404 : 200,
+            job == null ? error("No such job ID " + id) : GSON.toJson(job.config));
+        return;
+      case "POST jobs":
+        startJob(exchange, query);
+        return;
+      case "DELETE jobs/":
+        job = jobs.get(id);
+        if (job == null) {
+          respond(exchange, 404, error("No such job ID " + id));
+        } else {
+          job.killed = true;
+          respond(exchange, 200, GSON.toJson("KILLED"));
+        }
+        return;
+      case "GET data":
+        respond(exchange, 200, GSON.toJson(new ArrayList<>(data.keySet())));
+        return;
+      case "POST data/": {
+        String filename = "/tmp/spark-jobserver/upload/" + id + "-"
+            + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date()) + ".dat";
+        data.put(filename, new Date());
+        Map<String, Object> result = new HashMap<>();
+        result.put("result", Collections.singletonMap("filename", filename));
+        respond(exchange, 200, GSON.toJson(result));
+        return;
+      }
+      case "DELETE data/":
+        respond(exchange, data.remove(id) == null ? 404 : 200, GSON.toJson("OK"));
+        return;
+      case "PUT data":
+        data.clear();
+        respond(exchange, 200, GSON.toJson("OK"));
+        return;
+      default:
+        respond(exchange, 404, error("Unknown path " + exchange.getRequestURI()));
+    }
+  }
+
+  private void startJob(HttpExchange exchange, Map<String, String> query)
+      throws IOException, InterruptedException {
+    String appName = query.get("appName");
+    if (appName == null || !binaries.containsKey(appName)) {
+      respond(exchange, 404, error("appName " + appName + " not found"));
+      return;
+    }
+    String context = query.get("context");
+    if (context != null && !contexts.contains(context)) {
+      respond(exchange, 404, error("context " + context + " not found"));
+      return;
+    }
+    boolean error = jobErrorRate > 0 && ThreadLocalRandom.current().nextDouble() < jobErrorRate;
+    Job job = new Job(UUID.randomUUID().toString(),
+        context == null ? appName + "-" + System.nanoTime() : context, query.get("classPath"),
+        query, jobDurationMillis, error, error ? null : resultJson.get());
+    jobs.put(job.jobId, job);
+    history.addFirst(job);
+    historySize.incrementAndGet();
+    while (historySize.get() > maxJobs) {
+      Job oldest = history.pollLast();
+      if (oldest == null) {
+        break;
+      }
+      historySize.decrementAndGet();
+      jobs.remove(oldest.jobId);
+    }
+    if (Boolean.parseBoolean(query.get("sync"))) {
+      Thread.sleep(Math.max(0, job.durationMillis - job.elapsedMillis()));
+      respond(exchange, 200, toJson(job, true).toString());
+    } else {
+      respond(exchange, 202, toJson(job, false).toString());
+    }
+  }
+
+  private String listJobs(Map<String, String> query) {
+    JobStatus status = query.containsKey("status") ? JobStatus.valueOf(query.get("status"))
+        : null;
+    int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 50;
+    StringBuilder sb = new StringBuilder("[");
+    history.stream()
+        .filter(job -> status == null || job.status() == status)
+        .limit(limit)
+        .forEach(job -> sb.append(sb.length() > 1 ? "," : "").append(toJson(job, false)));
+    return sb.append(']').toString();
+  }
+
+  private JsonObject toJson(Job job, boolean withResult) {
+    JsonObject json = new JsonObject();
+    JobStatus status = job.status();
+    json.addProperty("jobId", job.jobId);
+    json.addProperty("status", status.name());
+    json.addProperty("context", job.context);
+    json.addProperty("classPath", job.classPath);
+    json.addProperty("duration", job.elapsedMillis() / 1000.0 + " secs");
+    json.addProperty("startTime", format(job.startTime));
+    if (withResult && status == JobStatus.FINISHED) {
+      json.add("result", new JsonParser().parse(job.result));
+    } else if (status == JobStatus.ERROR) {
+      JsonObject result = new JsonObject();
+      result.addProperty("message", job.killed ? "Job killed" : "Job failed");
+      result.addProperty("errorClass", "java.lang.RuntimeException");
+      JsonElement stack = GSON.toJsonTree(new String[] {
+          "org.apache.spark.scheduler.DAGScheduler.runJob(DAGScheduler.scala:1)"});
+      result.add("stack", stack);
+      json.add("result", result);
+    }
+    return json;
+  }
+
+  private static String success(String result) {
+    return "{\"status\":\"SUCCESS\",\"result\":" + GSON.toJson(result) + "}";
+  }
+
+  private static String error(String result) {
+    return "{\"status\":\"ERROR\",\"result\":" + GSON.toJson(result) + "}";
+  }
+
+  private static String format(Date date) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(date);
+  }
+
+  private static Map<String, String> query(String rawQuery) throws IOException {
+    Map<String, String> query = new LinkedHashMap<>();
+    if (rawQuery == null) {
+      return query;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int eq = pair.indexOf('=');
+      String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+      query.put(name, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+    }
+    return query;
+  }
+
+  private static void respond(HttpExchange exchange, int code, String json) throws IOException {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package spark.jobserver.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+public class IsoDateAdapterFactoryTest extends TestCase {
+  public void testParse() {
+    String[] dates = {
+        "2018-04-30T10:12:33.123+08:00",
+        "2018-04-30T02:12:33.123Z",
+        "1969-12-31T23:59:59.999Z",
+        "2000-02-29T00:00:00-0530",
+        "2100-03-01T12:00:00.5+01",
+    };
+    for (String date : dates) {
+      String iso = date.replaceAll("([+-]\\d\\d)(\\d\\d)$", "$1:$2")
+          .replaceAll("([+-]\\d\\d)$", "$1:00");
+      assertEquals(date, OffsetDateTime.parse(iso).toInstant().toEpochMilli(),
+          IsoDateAdapterFactory.parseMillis(date));
+    }
+    assertEquals(OffsetDateTime.of(2018, 4, 30, 10, 12, 0, 0, ZoneOffset.UTC).toInstant()
+        .toEpochMilli(), IsoDateAdapterFactory.parseMillis("2018-04-30 10:12"));
+    assertEquals(0, IsoDateAdapterFactory.parseMillis("1970-01-01"));
+    try {
+      IsoDateAdapterFactory.parseMillis("2018-13-01T00:00:00Z");
+      fail();
+    } catch (JsonSyntaxException e) {
+      // expected
+    }
+  }
+
+  public void testGson() {
+    Gson gson = JobServerClientBuilder.defaultGson();
+    Binary binary = gson.fromJson("{\"binary-type\":\"Jar\","
+        + "\"upload-time\":\"2018-04-30T10:12:33.123+08:00\"}", Binary.class);
+    assertEquals(1525054353123L, binary.getUploadTime().getTime());
+    assertTrue(gson.toJson(binary).contains("\"2018-04-30T02:12:33.123Z\""));
+    assertEquals(binary, gson.fromJson(gson.toJson(binary), Binary.class));
+    // Gson's default format, in the local time zone
+    assertEquals(LocalDateTime.of(2018, 4, 30, 2, 12, 33).atZone(ZoneId.systemDefault())
+        .toInstant().toEpochMilli(),
+        gson.fromJson("\"Apr 30, 2018 2:12:33 AM\"", Date.class).getTime());
+  }
+}
@@ -0,0 +1,524 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import okhttp3.ResponseBody;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Client against {@link FakeJobServer}, runs without a cluster.
+ */
+public class JobServerClientTest extends TestCase {
+  private FakeJobServer server;
+  private JobServerService service;
+  private final List<Path> temp = new ArrayList<>();
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new FakeJobServer().jobDuration(200);
+    service = new JobServerClientBuilder().baseUrl(server.url()).build();
+    Path jar = tempFile("app", ".jar");
+    Files.write(jar, new byte[1024]);
+    service.uploadJar("app", jar.toString());
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    server.close();
+    for (Path path : temp) {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  private Path tempFile(String prefix, String suffix) throws IOException {
+    Path path = Files.createTempFile(prefix, suffix);
+    temp.add(path);
+    return path;
+  }
+
+  private static class Row {
+    long id;
+    String name;
+  }
+
+  private SparkConf conf() {
+    return new SparkConf().appName("app").classPath("demo.Job");
+  }
+
+  public void testEndpoints() throws IOException {
+    HashMap<String, Binary> binaries = service.getBinaries().execute().body();
+    assertEquals("Jar", binaries.get("app").getBinaryType());
+    assertNotNull(binaries.get("app").getUploadTime());
+
+    Result result = service.createContext("ctx", conf().toMap()).execute().body();
+    assertEquals("SUCCESS", result.getStatus());
+    assertEquals(1, service.getContexts().execute().body().size());
+
+    JobInfo info = service.startJob(conf().context("ctx").toMap()).execute().body();
+    assertEquals(JobStatus.RUNNING, info.getStatus());
+    assertEquals("ctx", info.getContext());
+    assertEquals("demo.Job", service.getJobInfo(info.getJobId()).execute().body().getClassPath());
+    assertTrue(service.getJobConfig(info.getJobId()).execute().body().string().contains("app"));
+
+    ByteBuffer input = ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8));
+    DataResult data = service.uploadData("input", UploadBody.of(input, UploadBody.OCTET_STREAM))
+        .execute().body();
+    assertTrue(data.getResult().getFilename().contains("input"));
+    assertEquals(404, service.getJobInfo("missing").execute().code());
+  }
+
+  public void testAsync() throws Exception {
+    AsyncJobServerService async = new AsyncJobServerService(service);
+    List<CompletableFuture<JobInfo>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      futures.add(async.startJob(conf().toMap()));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    assertEquals(20, async.getJobs().get().size());
+    try {
+      async.getJobInfo("missing").get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof HttpException);
+    }
+  }
+
+  public void testSubmitAll() throws Exception {
+    server.failureRate(0.2);
+    List<SparkConf> confs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      confs.add(i % 2 == 0 ? conf() : conf().classPath("demo.OtherJob"));
+    }
+    List<AsyncJobServerService.Submission> submissions = new AsyncJobServerService(service)
+        .submitAll(confs, 8).get(30, TimeUnit.SECONDS);
+    assertEquals(100, submissions.size());
+    int failed = 0;
+    for (int i = 0; i < confs.size(); i++) {
+      AsyncJobServerService.Submission submission = submissions.get(i);
+      assertSame(confs.get(i), submission.getConf());
+      if (submission.isSuccessful()) {
+        assertEquals(confs.get(i).classPath(), submission.getInfo().getClassPath());
+      } else {
+        assertTrue(submission.getError() instanceof HttpException);
+        failed++;
+      }
+    }
+    assertTrue(failed > 0 && failed < 100);
+  }
+
+  public void testTrackerAndPoller() throws Exception {
+    server.jobErrorRate(0.5);
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      ids.add(service.startJob(conf().toMap()).execute().body().getJobId());
+    }
+
+    try (JobTracker tracker = new JobTracker(service).start(50, TimeUnit.MILLISECONDS);
+         JobPoller poller = new JobPoller(service, 10, TimeUnit.MILLISECONDS)
+             .interval(20, 100, TimeUnit.MILLISECONDS).batchThreshold(4)) {
+      for (String id : ids) {
+        JobInfo tracked = tracker.track(id).get(10, TimeUnit.SECONDS);
+        assertTrue(tracked.getStatus().isTerminal());
+        JobInfo polled = poller.awaitCompletion(id, 10, TimeUnit.SECONDS).get();
+        assertEquals(tracked.getStatus(), polled.getStatus());
+      }
+      assertEquals(0, tracker.size());
+    }
+  }
+
+  public void testPollerClose() throws Exception {
+    server.jobDuration(60_000);
+    String jobId = service.startJob(conf().toMap()).execute().body().getJobId();
+    JobPoller poller = new JobPoller(service, 10, TimeUnit.MILLISECONDS)
+        .interval(20, 100, TimeUnit.MILLISECONDS);
+    CompletableFuture<JobInfo> future = poller.awaitCompletion(jobId, 1, TimeUnit.MINUTES);
+    Thread.sleep(200);
+    poller.close();
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (CancellationException e) {
+      // waiting jobs are cancelled on close
+    }
+    try {
+      poller.awaitCompletion(jobId, 1, TimeUnit.MINUTES);
+      fail();
+    } catch (IllegalStateException e) {
+      // closed for good
+    }
+  }
+
+  public void testTrackerBeyondDefaultListing() throws Exception {
+    server.jobDuration(60_000);
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      ids.add(service.startJob(conf().toMap()).execute().body().getJobId());
+    }
+    for (int i = 0; i < 300; i++) {
+      service.startJob(conf().toMap()).execute();
+    }
+    JobTracker tracker = new JobTracker(service);
+    ids.forEach(tracker::track);
+    long requests = server.requests();
+    tracker.refresh();
+    // a listing of 400 misses the oldest tracked jobs, one of 800 covers them all
+    assertEquals(2, server.requests() - requests);
+    assertEquals(200, tracker.snapshot().size());
+
+    // the next sweeps start from the depth the tracked jobs were found at
+    for (int tick = 0; tick < 3; tick++) {
+      for (int i = 0; i < 100; i++) {
+        service.startJob(conf().toMap()).execute();
+      }
+      requests = server.requests();
+      tracker.refresh();
+      assertEquals(1, server.requests() - requests);
+      assertEquals(200, tracker.snapshot().size());
+    }
+  }
+
+  public void testTrackerOfContext() throws Exception {
+    service.createContext("ctx", conf().toMap()).execute();
+    for (int i = 0; i < 300; i++) {
+      service.startJob(conf().toMap()).execute();
+    }
+    Set<String> seen = ConcurrentHashMap.newKeySet();
+    JobTracker tracker = new JobTracker(service).trackContext("ctx")
+        .addListener((info, previous) -> seen.add(info.getJobId()));
+    tracker.refresh();
+    for (int tick = 0; tick < 6; tick++) {
+      for (int i = 0; i < 5; i++) {
+        service.startJob(conf().context(i == 0 ? "ctx" : null).toMap()).execute();
+      }
+      long requests = server.requests();
+      tracker.refresh();
+      // the listing stops at the newest job of the previous sweep
+      assertEquals(1, server.requests() - requests);
+    }
+    assertEquals(6, seen.size());
+  }
+
+  public void testContextPool() throws Exception {
+    SparkConf template = conf();
+    try (ContextPool pool = new ContextPool(service, 1, 1, TimeUnit.MINUTES)
+        .register("profile", conf())) {
+      try (ContextPool.Lease lease = pool.lease("profile")) {
+        JobInfo info = lease.startJob(template);
+        assertEquals(lease.context(), info.getContext());
+      }
+    }
+    assertNull(template.context());
+  }
+
+  public void testContextPoolFillsDuringLease() throws Exception {
+    server.serviceTime(200);
+    try (ContextPool pool = new ContextPool(service, 3, 1, TimeUnit.MINUTES)
+        .register("profile", conf())) {
+      // the warming thread is creating the first context, so the lease creates its own
+      Thread.sleep(100);
+      try (ContextPool.Lease lease = pool.lease("profile")) {
+        Thread.sleep(500);
+        // the lease's context is counted once, two more were warmed beside it
+        assertEquals(3, service.getContexts().execute().body().size());
+      }
+    }
+  }
+
+  public void testStreamingAndCursor() throws IOException {
+    for (int i = 0; i < 120; i++) {
+      service.startJob(conf().toMap()).execute();
+    }
+    try (JobInfoIterator jobs = service.streamJobs(null, 1000, info -> true)) {
+      assertEquals(120, jobs.stream().count());
+    }
+    try (JobInfoIterator jobs = service.streamJobs(JobStatus.RUNNING, 1000, info -> true)) {
+      assertTrue(jobs.hasNext());
+      assertEquals(JobStatus.RUNNING, jobs.next().getStatus());
+    }
+    JobCursor cursor = service.jobCursor(null, 7);
+    int count = 0;
+    while (cursor.hasNext()) {
+      cursor.next();
+      count++;
+    }
+    assertEquals(120, count);
+  }
+
+  public void testStreamResult() throws Exception {
+    StringBuilder rows = new StringBuilder("[");
+    for (int i = 0; i < 10000; i++) {
+      rows.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"row-")
+          .append(i).append("\"}");
+    }
+    String json = rows.append(']').toString();
+    server.result(() -> json);
+
+    ResponseBody body = service.startJobBody(conf().sync(true).toMap()).execute().body();
+    String jobId;
+    long[] sum = new long[1];
+    try (JobResultReader reader = new JobResultReader(body)) {
+      reader.forEach(row -> sum[0] += row.getAsJsonObject().get("id").getAsLong());
+      jobId = reader.getJobId();
+      assertEquals(JobStatus.FINISHED, reader.getStatus());
+      assertTrue(reader.getBytesRead() > json.length());
+    }
+    assertEquals(9999 * 10000 / 2, sum[0]);
+
+    int[] count = new int[1];
+    assertTrue(service.streamResult(jobId, row -> count[0]++) > json.length());
+    assertEquals(10000, count[0]);
+
+    List<Row> decoded = new ArrayList<>();
+    try (JobResultReader reader = JobResultReader.execute(service.getJobInfoBody(jobId))) {
+      reader.forEach(Row.class, decoded::add);
+    }
+    assertEquals("row-9999", decoded.get(9999).name);
+
+    Path file = tempFile("result", ".json");
+    assertEquals(json.length(), service.streamResult(jobId, file));
+    assertEquals(json, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+    TerminalJobCache cache = new TerminalJobCache().maxEntryBytes(64 * 1024);
+    JobServerService cached = new JobServerClientBuilder().baseUrl(server.url())
+        .addInterceptor(cache).build();
+    count[0] = 0;
+    cached.streamResult(jobId, row -> count[0]++);
+    assertEquals(10000, count[0]);
+    assertEquals(0, cache.size());
+  }
+
+  public void testJarDeduplicator() throws IOException {
+    Path jar = tempFile("dedup", ".jar");
+    Files.write(jar, new byte[] {1, 2, 3});
+    Path index = tempFile("index", ".properties");
+    Files.delete(index);
+    assertTrue(new JarDeduplicator(service, index).upload("dedup", jar));
+    assertFalse(new JarDeduplicator(service, index).upload("dedup", jar));
+    Files.write(jar, new byte[] {4, 5, 6});
+    assertTrue(new JarDeduplicator(service, index).upload("dedup", jar));
+  }
+
+  public void testStatusPublisher() throws Exception {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      ids.add(service.startJob(conf().toMap()).execute().body().getJobId());
+    }
+    List<JobStatusEvent> events = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Subscription[] subscription = new Subscription[1];
+    try (JobStatusPublisher publisher = JobStatusPublisher.ofJobs(service, ids)) {
+      publisher.subscribe(new Subscriber<JobStatusEvent>() {
+        @Override
+        public void onSubscribe(Subscription s) {
+          subscription[0] = s;
+        }
+
+        @Override
+        public void onNext(JobStatusEvent event) {
+          events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          done.completeExceptionally(t);
+        }
+
+        @Override
+        public void onComplete() {
+          done.complete(null);
+        }
+      });
+      publisher.refresh();
+      Thread.sleep(400);
+      publisher.refresh();
+      assertFalse(done.isDone());
+      assertTrue(events.isEmpty());
+
+      // without demand, the two transitions of each job were conflated
+      subscription[0].request(Long.MAX_VALUE);
+      done.get(10, TimeUnit.SECONDS);
+      assertEquals(10, events.size());
+      for (JobStatusEvent event : events) {
+        assertNull(event.getPrevious());
+        assertEquals(JobStatus.FINISHED, event.getStatus());
+      }
+    }
+  }
+
+  public void testContextPublisher() throws Exception {
+    server.jobDuration(1000);
+    service.createContext("ctx", conf().toMap()).execute();
+    for (int i = 0; i < 80; i++) {
+      service.startJob(conf().context("ctx").toMap()).execute();
+    }
+    for (int i = 0; i < 100; i++) {
+      service.startJob(conf().toMap()).execute();
+    }
+    Map<String, JobStatus> seen = new ConcurrentHashMap<>();
+    try (JobStatusPublisher publisher = JobStatusPublisher.ofContext(service, "ctx")) {
+      publisher.subscribe(new Subscriber<JobStatusEvent>() {
+        @Override
+        public void onSubscribe(Subscription s) {
+          s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(JobStatusEvent event) {
+          seen.put(event.getJobId(), event.getStatus());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+      });
+      // running jobs of the context beyond the latest 50 are found
+      publisher.refresh();
+      // so is a burst of new jobs larger than the listing
+      for (int i = 0; i < 200; i++) {
+        service.startJob(conf().context(i % 4 == 0 ? "ctx" : null).toMap()).execute();
+      }
+      publisher.refresh();
+      Thread.sleep(1200);
+      publisher.refresh();
+      Thread.sleep(100);
+    }
+    assertEquals(130, seen.size());
+    assertEquals(Collections.singleton(JobStatus.FINISHED), new HashSet<>(seen.values()));
+  }
+
+  public void testResponseCache() throws IOException {
+    ResponseCache cache = new ResponseCache(1, TimeUnit.MINUTES, 16);
+    JobServerService cached = new JobServerClientBuilder().baseUrl(server.url())
+        .addInterceptor(cache).build();
+    assertEquals(0, cached.getContexts().execute().body().size());
+    long requests = server.requests();
+    assertEquals(0, cached.getContexts().execute().body().size());
+    assertEquals(1, cached.getBinaries().execute().body().size());
+    assertEquals(1, cached.getBinaries().execute().body().size());
+    assertEquals(requests + 1, server.requests());
+    assertEquals(2, cache.getHits());
+
+    cached.createContext("ctx", conf().toMap()).execute();
+    assertEquals(1, cached.getContexts().execute().body().size());
+    assertEquals(1, cached.getBinaries().execute().body().size());
+    assertEquals(3, cache.getHits());
+  }
+
+  public void testSingleFlight() throws Exception {
+    server.serviceTime(300);
+    SingleFlight singleFlight = new SingleFlight();
+    AsyncJobServerService async = new AsyncJobServerService(new JobServerClientBuilder()
+        .baseUrl(server.url()).addInterceptor(singleFlight).build());
+    long requests = server.requests();
+    List<CompletableFuture<HashMap<String, Binary>>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      futures.add(async.getBinaries());
+    }
+    for (CompletableFuture<HashMap<String, Binary>> future : futures) {
+      assertEquals(1, future.get(10, TimeUnit.SECONDS).size());
+    }
+    assertTrue(server.requests() - requests < 20);
+    assertEquals(20 - (server.requests() - requests), singleFlight.getCoalesced());
+  }
+
+  public void testTerminalJobCache() throws Exception {
+    TerminalJobCache cache = new TerminalJobCache();
+    JobServerService cached = new JobServerClientBuilder().baseUrl(server.url())
+        .addInterceptor(cache).build();
+    String jobId = cached.startJob(conf().toMap()).execute().body().getJobId();
+    assertEquals(JobStatus.RUNNING, cached.getJobInfo(jobId).execute().body().getStatus());
+    assertEquals(0, cache.size());
+
+    Thread.sleep(400);
+    assertEquals(JobStatus.FINISHED, cached.getJobInfo(jobId).execute().body().getStatus());
+    cached.getJobConfig(jobId).execute().body().close();
+    long requests = server.requests();
+    for (int i = 0; i < 3; i++) {
+      JobInfo info = cached.getJobInfo(jobId).execute().body();
+      assertEquals(jobId, info.getJobId());
+      assertEquals("done", info.getResult().getMessage());
+      assertTrue(cached.getJobConfig(jobId).execute().body().string().contains("app"));
+    }
+    assertEquals(requests, server.requests());
+    assertEquals(6, cache.getHits());
+    assertTrue(cache.getBytes() > 0);
+    assertEquals(404, cached.getJobInfo("missing").execute().code());
+  }
+
+  public void testMultiServer() throws IOException {
+    try (FakeJobServer other = new FakeJobServer();
+         MultiServerJobServerService multi = new MultiServerJobServerService(
+             Arrays.asList(server.url(), other.url()))) {
+      Path jar = tempFile("app", ".jar");
+      Files.write(jar, new byte[1024]);
+      multi.uploadJar("app", jar.toString());
+      assertEquals(1, multi.getBinaries().execute().body().size());
+      try {
+        multi.uploadJar("once", UploadBody.of(new ByteArrayInputStream(new byte[16]), 16,
+            UploadBody.JAR));
+        fail();
+      } catch (IllegalArgumentException e) {
+        // an input stream can't be sent to both servers
+      }
+
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        ids.add(multi.startJob(conf().toMap()).execute().body().getJobId());
+      }
+      for (String id : ids) {
+        assertEquals(id, multi.getJobInfo(id).execute().body().getJobId());
+      }
+      assertEquals(20, multi.getJobs().execute().body().size());
+      assertTrue(server.requests() > 0 && other.requests() > 0);
+
+      other.close();
+      for (int i = 0; i < 20; i++) {
+        // a submission which can't connect is retried on the other server
+        assertTrue(multi.startJob(conf().toMap()).execute().isSuccessful());
+      }
+      assertEquals(Collections.singletonList(server.url()), multi.healthyServers());
+
+      // uploads still go to the ejected server, and report it
+      try {
+        multi.uploadJar("other", jar.toString());
+        fail();
+      } catch (MultiServerJobServerService.BroadcastException e) {
+        assertEquals(Collections.singletonList(server.url()), e.getSucceeded());
+        assertEquals(Collections.singleton(other.url()), e.getFailed().keySet());
+      }
+      assertTrue(service.getBinaries().execute().body().containsKey("other"));
+    }
+  }
+
+  public void testFailureInjection() throws IOException {
+    server.failureRate(1);
+    Response<JobInfo> response = service.startJob(conf().toMap()).execute();
+    assertEquals(500, response.code());
+  }
+}
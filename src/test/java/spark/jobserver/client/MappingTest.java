@@ -0,0 +1,28 @@
+package spark.jobserver.client;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class MappingTest extends TestCase {
+  public void testSparkConf() {
+    SparkConf conf = new SparkConf().appName("app").context("ctx").jars("hdfs:///jars/*");
+    Map<String, Object> map = conf.toMap();
+    assertEquals("app", map.get("appName"));
+    assertEquals("ctx", map.get("context"));
+    assertEquals("hdfs:///jars/*", map.get("spark.yarn.jars"));
+    assertEquals(500000L, map.get("timeout"));
+    assertEquals(false, map.get("sync"));
+    assertFalse(map.containsKey("classPath"));
+    assertFalse(map.containsKey("context-factory"));
+  }
+
+  public void testSparkConst() {
+    SparkConst conf = new SparkConst().master("yarn").driverCores(4);
+    Map<String, Object> map = conf.toMap();
+    assertEquals("yarn", map.get("spark.master"));
+    assertEquals(4L, map.get("spark.driver.cores"));
+    assertEquals("1g", map.get("spark.driver.memory"));
+    assertFalse(map.containsKey("spark.extraListeners"));
+  }
+}
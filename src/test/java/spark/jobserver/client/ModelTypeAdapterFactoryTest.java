@@ -0,0 +1,87 @@
+package spark.jobserver.client;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ModelTypeAdapterFactoryTest extends TestCase {
+  private static class Named {
+    String name;
+  }
+
+  private final Gson gson = JobServerClientBuilder.defaultGson();
+  private final Gson reflective = new GsonBuilder().setLenient()
+      .registerTypeAdapterFactory(new IsoDateAdapterFactory()).create();
+
+  private <T> void assertSameJson(T value, Class<T> type) {
+    String json = reflective.toJson(value);
+    assertEquals(json, gson.toJson(value));
+    assertEquals(reflective.fromJson(json, type), gson.fromJson(json, type));
+  }
+
+  public void testModels() {
+    JobInfo info = new JobInfo();
+    info.setJobId("384cb740-6fc1-44d3-94c3-4b2e2067846b");
+    info.setStatus(JobStatus.ERROR);
+    info.setContext("ctx");
+    info.setStartTime(new Date(1525054353123L));
+    JobInfo.Result result = new JobInfo.Result();
+    result.setMessage("failed");
+    result.setStack(new String[] {"a.b(C.java:1)", "d.e(F.java:2)"});
+    info.setResult(result);
+    assertSameJson(info, JobInfo.class);
+    assertSameJson(new JobInfo(), JobInfo.class);
+
+    Binary binary = new Binary();
+    binary.setBinaryType("Jar");
+    binary.setUploadTime(new Date(1525054353123L));
+    assertSameJson(binary, Binary.class);
+
+    Result status = new Result();
+    status.setStatus("SUCCESS");
+    status.setResult("Context initialized");
+    assertSameJson(status, Result.class);
+
+    DataResult data = new DataResult();
+    data.setResult(new DataResult.Result());
+    data.getResult().setFilename("/tmp/input.dat");
+    assertSameJson(data, DataResult.class);
+  }
+
+  public void testLenientInput() {
+    JobInfo info = gson.fromJson("{\"jobId\":1,\"status\":\"KILLED\",\"extra\":{\"a\":[1]},"
+        + "\"result\":null}", JobInfo.class);
+    assertEquals("1", info.getJobId());
+    assertNull(info.getStatus());
+    assertNull(info.getResult());
+    assertNull(gson.fromJson("null", JobInfo.class));
+  }
+
+  public void testLazyResult() {
+    JobInfo info = gson.fromJson("{\"jobId\":\"1\",\"status\":\"FINISHED\","
+        + "\"result\":{\"rows\":[1,2.50,3e2],\"name\":\"x\",\"empty\":null}}", JobInfo.class);
+    assertEquals("{\"rows\":[1,2.50,3e2],\"name\":\"x\",\"empty\":null}", info.getResultJson());
+    Map<String, Object> map = info.result(new TypeToken<Map<String, Object>>() { });
+    assertSame(map, info.result(new TypeToken<Map<String, Object>>() { }));
+    assertEquals("x", map.get("name"));
+    assertEquals(Arrays.asList(1.0, 2.5, 300.0), map.get("rows"));
+    // decoded again with another Gson
+    Gson upper = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+        .create();
+    assertEquals("x", info.result(Named.class).name);
+    assertNull(info.result(Named.class, upper).name);
+
+    info = gson.fromJson("{\"result\":[\"a\",\"b\"]}", JobInfo.class);
+    assertEquals(Arrays.asList("a", "b"), info.result(new TypeToken<List<String>>() { }));
+    assertNull(info.getResult());
+    assertNull(new JobInfo().result(String.class));
+  }
+}
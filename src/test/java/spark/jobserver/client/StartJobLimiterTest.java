@@ -0,0 +1,109 @@
+package spark.jobserver.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import retrofit2.Response;
+
+public class StartJobLimiterTest extends TestCase {
+  private FakeJobServer server;
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new FakeJobServer();
+    executor = Executors.newCachedThreadPool();
+    Path jar = Files.createTempFile("app", ".jar");
+    try {
+      Files.write(jar, new byte[1024]);
+      new JobServerClientBuilder().baseUrl(server.url()).build().uploadJar("app", jar.toString());
+    } finally {
+      Files.delete(jar);
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdownNow();
+    server.close();
+  }
+
+  private JobServerService service(StartJobLimiter limiter) {
+    return new JobServerClientBuilder().baseUrl(server.url()).addInterceptor(limiter).build();
+  }
+
+  private Future<Response<JobInfo>> submit(JobServerService service) {
+    return executor.submit(() -> service.startJob(
+        new SparkConf().appName("app").classPath("demo.Job").toMap()).execute());
+  }
+
+  public void testIncrease() throws Exception {
+    server.serviceTime(5);
+    StartJobLimiter limiter = new StartJobLimiter(4);
+    JobServerService service = service(limiter);
+    List<Future<Response<JobInfo>>> futures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      futures.add(submit(service));
+    }
+    for (Future<Response<JobInfo>> future : futures) {
+      assertTrue(future.get(30, TimeUnit.SECONDS).isSuccessful());
+    }
+    // grows by one per window of successes while at least half used
+    assertTrue(limiter.getLimit() > 4);
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  public void testOneCutPerOverload() throws Exception {
+    server.serviceTime(300).failureRate(1);
+    StartJobLimiter limiter = new StartJobLimiter(16);
+    JobServerService service = service(limiter);
+    List<Future<Response<JobInfo>>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(submit(service));
+    }
+    for (Future<Response<JobInfo>> future : futures) {
+      assertEquals(500, future.get(30, TimeUnit.SECONDS).code());
+    }
+    // the ten failures in flight together are one overload
+    assertEquals(12, limiter.getLimit());
+
+    assertEquals(500, submit(service).get(30, TimeUnit.SECONDS).code());
+    assertEquals(9, limiter.getLimit());
+  }
+
+  public void testLimitExceeded() throws Exception {
+    server.serviceTime(1000);
+    StartJobLimiter limiter = new StartJobLimiter(1).limits(1, 1)
+        .queue(1, 300, TimeUnit.MILLISECONDS);
+    JobServerService service = service(limiter);
+    Future<Response<JobInfo>> first = submit(service);
+    Thread.sleep(100);
+    Future<Response<JobInfo>> queued = submit(service);
+    Thread.sleep(100);
+    try {
+      submit(service).get(30, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      // the queue is full
+      assertTrue(e.getCause() instanceof StartJobLimiter.LimitExceededException);
+    }
+    try {
+      queued.get(30, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      // waited too long
+      assertTrue(e.getCause() instanceof StartJobLimiter.LimitExceededException);
+      assertTrue(e.getCause().getMessage().startsWith("Timed out"));
+    }
+    assertTrue(first.get(30, TimeUnit.SECONDS).isSuccessful());
+  }
+}
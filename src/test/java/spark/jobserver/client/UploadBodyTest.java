@@ -0,0 +1,102 @@
+package spark.jobserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import okio.Buffer;
+import okio.ByteString;
+
+public class UploadBodyTest extends TestCase {
+  private final byte[] bytes = new byte[300 * 1024 + 7];
+  private Path file;
+
+  @Override
+  protected void setUp() throws IOException {
+    new Random(42).nextBytes(bytes);
+    file = Files.createTempFile("upload", ".bin");
+    Files.write(file, bytes);
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  private void assertWrites(UploadBody body) throws Exception {
+    List<Long> progress = new ArrayList<>();
+    body.checksum("SHA-256").progress((written, length) -> {
+      assertEquals(bytes.length, length);
+      progress.add(written);
+    });
+    Buffer sink = new Buffer();
+    body.writeTo(sink);
+    assertEquals(ByteString.of(bytes), sink.readByteString());
+    assertEquals(ByteString.of(MessageDigest.getInstance("SHA-256").digest(bytes)),
+        body.checksum());
+    assertTrue(progress.size() > 1);
+    for (int i = 1; i < progress.size(); i++) {
+      assertTrue(progress.get(i) > progress.get(i - 1));
+    }
+    assertEquals(Long.valueOf(bytes.length), progress.get(progress.size() - 1));
+  }
+
+  public void testSources() throws Exception {
+    assertWrites(UploadBody.of(file, UploadBody.OCTET_STREAM));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      assertWrites(UploadBody.of(channel, 0, bytes.length, UploadBody.OCTET_STREAM));
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+      assertWrites(UploadBody.of(mapped, UploadBody.OCTET_STREAM));
+    }
+    assertWrites(UploadBody.of(ByteBuffer.wrap(bytes), UploadBody.OCTET_STREAM));
+    assertWrites(UploadBody.of(new ByteArrayInputStream(bytes), bytes.length,
+        UploadBody.OCTET_STREAM));
+  }
+
+  public void testRepeatable() throws Exception {
+    UploadBody body = UploadBody.of(file, UploadBody.OCTET_STREAM).checksum("MD5");
+    body.writeTo(new Buffer());
+    ByteString checksum = body.checksum();
+    body.writeTo(new Buffer());
+    assertEquals(checksum, body.checksum());
+    assertTrue(body.isRepeatable());
+  }
+
+  public void testStreamWrittenOnce() throws Exception {
+    UploadBody body = UploadBody.of(new ByteArrayInputStream(bytes, 0, 100), 200,
+        UploadBody.OCTET_STREAM);
+    assertFalse(body.isRepeatable());
+    try {
+      body.writeTo(new Buffer());
+      fail();
+    } catch (IOException e) {
+      assertEquals("Expected 200 bytes but sent 100", e.getMessage());
+    }
+    // a retry reports the first failure
+    try {
+      body.writeTo(new Buffer());
+      fail();
+    } catch (IOException e) {
+      assertEquals("Expected 200 bytes but sent 100", e.getMessage());
+    }
+
+    body = UploadBody.of(new ByteArrayInputStream(bytes), bytes.length, UploadBody.OCTET_STREAM);
+    body.writeTo(new Buffer());
+    try {
+      body.writeTo(new Buffer());
+      fail();
+    } catch (IOException e) {
+      assertEquals("An input stream body can be written once", e.getMessage());
+    }
+  }
+}